@@ -9,7 +9,7 @@ package inventoryman;
  */
 public class Book extends Item {
 	
-	//Publisher is a new and unique state for book.
+	//Publisher is a new and unique state for book, shared through the pool of strings like the creator.
 	protected String _publisher;
 	
 	/**
@@ -29,7 +29,14 @@ public class Book extends Item {
 			String owner, String costStr, String formatStr, String publisher) throws Exception {
 		super(creator, title, publicationYear, acquisitionDateStr, owner, costStr, formatStr);
 		this.setPublisher(publisher);
-		stateType = "Book";
+	}
+	/**
+	 * Constructs a Book object from values which have already been checked by {@link ItemValidator}.
+	 */
+	Book(String creator, String title, String publicationYear, int acquisitionDay,
+			String owner, String costStr, long costCents, String formatStr, String publisher) {
+		super(creator, title, publicationYear, acquisitionDay, owner, costStr, costCents, formatStr);
+		this.setPublisher(publisher);
 	}
 	/**
 	 * Set the publisher of the book.
@@ -37,13 +44,57 @@ public class Book extends Item {
 	 */
 	public void setPublisher(String publisher) {
 		this._publisher = publisher;
+		changed();
+	}
+	
+	/**
+	 * @return The publisher of the book.
+	 */
+	String publisher() {
+		return _publisher;
+	}
+	
+	/**
+	 * Take the publisher from the pool of an inventory as well as the values of every item.
+	 * @param strings The pool of the inventory.
+	 */
+	@Override
+	void share(StringPool strings) {
+		super.share(strings);
+		_publisher = strings.shared(_publisher);
+	}
+	
+	/**
+	 * @return BOOK.
+	 */
+	ItemType type() {
+		return ItemType.BOOK;
+	}
+	
+	/**
+	 * Append a string displaying of the book. 
+	 * @param out Where to append the string.
+	 */
+	void appendTo(StringBuilder out) {
+		out.append(creator()).append(", '").append(_title).append("'. (").append(_publicationYear).append(", ")
+				.append(publisher()).append("). [").append(format()).append(", ").append(owner()).append(", ");
+		appendAcquisitionDate(out);
+		out.append(", ").append(_costStr).append(']');
+	}
+	
+	/**
+	 * Append the line of the book for the flat report.
+	 * @param out Where to append the line.
+	 */
+	void appendReportLineTo(StringBuilder out) {
+		out.append(owner()).append(": ").append(creator()).append(", '").append(_title).append("'. (")
+				.append(format()).append(')');
 	}
 	
 	/**
-	 * @return A string displaying of the book. 
+	 * @return A record with the values of the book.
 	 */
-	public String asString() {
-		return (_creator + ", '" + _title + "'. (" + _publicationYear + ", " + _publisher 
-				+ "). [" + _formatStr + ", " + _owner + ", " + _acquisitionDateStr + ", " + _costStr + "]");
+	ItemRecord toRecord() {
+		return ItemRecord.book(creator(), _title, _publicationYear, publisher(), acquisitionDateStr(), owner(), _costStr, format());
 	}
 }
@@ -0,0 +1,1058 @@
+package inventoryman;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * This ColumnarInventoryMan provides the methods of the API InventoryMan, like
+ * {@link InventoryManImpl}, but keeps the items in {@link Columns} instead of an object per item:
+ * a type byte, epoch days, cents and the ids of its own {@link StringPool} for creator, owner, format
+ * and publisher are kept by the row of the item, every order of {@link State} is an {@link IntTree} of rows,
+ * and items are found by creator, title and format in a hash table of rows. Scanning a column reads
+ * memory in order, and the items take much less room.
+ * <p>
+ * The columns are either arrays on the heap or, for very large inventories, direct buffers outside
+ * the heap, see {@link OffHeapColumns}. Then only the hash table, the orders, the ids of the owners, the costs
+ * in cents and the strings which repeat, such as creators and owners, are on the heap.
+ * <p>
+ * Adding or removing an item or giving it to another owner changes each order it is in in the logarithm
+ * of the number of items, since a tree of rows copies only the path down to the row, and a large batch
+ * added with {@link #addAll(List)} is merged into each order in one pass. A new owner or cost is written
+ * into a copy of the chunk of its row, see {@link Columns}.
+ * The row of a removed item stays in the columns, in no order, and its slot in the hash table is given
+ * to the next item added which probes past it. Once removed rows make up a third of the rows, the items
+ * left are copied into new columns, numbered anew, which costs about as much again as the removes did.
+ * Off the heap, the strings of old costs are left behind too, so the items are also copied once there
+ * have been as many new costs as there are items.
+ * Cursors and the search index use the sequence of an item rather than its row, which the copy keeps.
+ * It is safe to share between threads: writers publish a new view of the columns once they are done,
+ * and queries read the view without locking. A query never sees an item change while it runs.
+ *
+ */
+public class ColumnarInventoryMan implements InventoryMan {
+	private static final State[] STATES = State.values();
+	private static final int INITIAL_CAPACITY = 64;
+	private static final int ADDED = STATES.length; //the order of the rows as added, after those of STATES
+	private static final int REMOVED = -1; //a slot of a removed row
+
+	private final Object _writeLock = new Object();
+	private volatile View _view;
+	private final CreatorIndex _CreatorIndex = new CreatorIndex();
+	private final SearchIndex _SearchIndex = new SearchIndex();
+	private final CostAggregates _Aggregates = new CostAggregates();
+	private final String _flatName;
+	private final boolean _offHeap;
+	private int _oldCosts; //the costs replaced since the columns were made, guarded by _writeLock
+
+	/**
+	 * Create a ColumnarInventoryMan object for the specified flat, keeping its columns on the heap.
+	 * @param flatName The name of the flat whose inventory items are being managed.
+	 */
+	public ColumnarInventoryMan(String flatName) {
+		this(flatName, false);
+	}
+
+	/**
+	 * Create a ColumnarInventoryMan object for the specified flat.
+	 * @param flatName The name of the flat whose inventory items are being managed.
+	 * @param offHeap Whether to keep the columns outside the heap.
+	 */
+	public ColumnarInventoryMan(String flatName, boolean offHeap) {
+		_flatName = flatName;
+		_offHeap = offHeap;
+		StringPool strings = new StringPool();
+		Columns columns = offHeap ? new OffHeapColumns(strings) : new HeapColumns(strings, INITIAL_CAPACITY);
+		IntTree[] orders = new IntTree[STATES.length + 1];
+		Arrays.fill(orders, IntTree.EMPTY);
+		_view = new View(columns, 0, orders, new Slots(2 * INITIAL_CAPACITY));
+	}
+
+	/**
+	 * Add an item representing book to the inventory with the specified values,
+	 * as {@link InventoryMan#addBook}.
+	 * @return A string, either "Success" if there are no problems or a string beginning with "ERROR" and the rest of the string
+	 * providing some details as to what went wrong.
+	 */
+	public String addBook(String author, String title, String publicationYear, String publisher,
+			String acquisitionDateStr, String owner, String costStr, String formatStr) {
+		return addAll(Collections.singletonList(ItemRecord.book(author, title, publicationYear, publisher,
+				acquisitionDateStr, owner, costStr, formatStr))).get(0);
+	}
+
+	/**
+	 * Add an item representing music to the inventory with the specified values,
+	 * as {@link InventoryMan#addMusic}.
+	 * @return A string, either "Success" if there are no problems or a string beginning with "ERROR" and the rest of the string
+	 * providing some details as to what went wrong.
+	 */
+	public String addMusic(String artist, String title, String releaseDateStr, String acquisitionDateStr,
+			String owner, String costStr, String formatStr) {
+		return addAll(Collections.singletonList(ItemRecord.music(artist, title, releaseDateStr,
+				acquisitionDateStr, owner, costStr, formatStr))).get(0);
+	}
+
+	/**
+	 * Add many items to the inventory at once. The items are appended to the columns in the order of
+	 * the records, then sorted among themselves and merged into each order, so a large batch is merged
+	 * in one pass over each order and a small one costs the logarithm of the size per item. The result for each record is the same as adding it with
+	 * {@link #addBook} or {@link #addMusic}.
+	 * @param records The items to add.
+	 * @return A list with the result of adding each record, in the order of the records, either "Success"
+	 * or a string beginning with "ERROR" and the rest of the string providing some details as to what went wrong.
+	 */
+	public List<String> addAll(List<ItemRecord> records) {
+		String[] results = new String[records.size()];
+		synchronized (_writeLock) {
+			View view = _view;
+			Columns columns = view._columns;
+			int size = view._size;
+			Slots slots = view._slots.copy();
+			int[] added = new int[results.length];
+			int count = 0;
+			for (int i = 0; i < results.length; i++) {
+				ItemRecord record = records.get(i);
+				int acquisitionDay = ItemValidator.toEpochDay(record.getAcquisitionDateStr());
+				long costCents = ItemValidator.toCents(record.getCostStr());
+				if (acquisitionDay == ItemValidator.INVALID_DAY || costCents == ItemValidator.INVALID_COST
+						|| record.getOwner() == null
+						|| !ItemKey.isKey(record.getCreator(), record.getTitle(), record.getFormatStr())) {
+					results[i] = "ERROR" + record.validate().message();
+					continue;
+				}
+
+				//Rows at or after the size of the view are not read, so the row can be written before it is published.
+				ItemKey key = new ItemKey(record.getCreator(), record.getTitle(), record.getFormatStr());
+				int slot = find(columns, slots, key.spreadHash(), record.getCreator(), record.getTitle(),
+						record.getFormatStr(), size);
+				if (slots.get(slot) > 0) {
+					results[i] = "ERROR" + "Item already exists!";
+					continue;
+				}
+				columns = columns.append(size, record, acquisitionDay, costCents);
+				slots.set(slot, size + 1);
+				_SearchIndex.add(columns.sequence(size), record.getTitle(), record.getCreator(), record.getPublisher());
+				added[count++] = size++;
+				if (2 * size > slots.capacity()) {
+					slots = rehash(columns, slots, 2 * slots.capacity());
+				}
+				results[i] = "Success";
+			}
+			if (count > 0) {
+				IntTree[] orders = new IntTree[STATES.length + 1];
+				orders[ADDED] = view._orders[ADDED].addAll(added, count, sorting(columns, null));
+				for (State state : STATES) {
+					IntTree.Order sorting = sorting(columns, state);
+					IntTree.sort(added, count, sorting);
+					orders[state.ordinal()] = view._orders[state.ordinal()].addAll(added, count, sorting);
+				}
+				_view = new View(columns, size, orders, slots);
+				for (int i = 0; i < count; i++) {
+					_CreatorIndex.add(columns.strings().string(columns.creator(added[i])));
+					_Aggregates.add(columns.item(added[i]));
+				}
+			}
+		}
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Remove the item with the specified creator, title and format from the inventory,
+	 * as {@link InventoryMan#removeItem(String, String, String)}. The row is taken out of each order,
+	 * copying only the path of the tree down to it, and the columns are compacted once there are
+	 * many removed rows.
+	 * @param creator The artist or author of the item
+	 * @param title The title of the item
+	 * @param formatStr The format of the item
+	 * @return A string, either "Success" if there are no problems or a string beginning with "ERROR" and the rest of the string
+	 * providing some details as to what went wrong.
+	 */
+	public String removeItem(String creator, String title, String formatStr) {
+		if (!ItemKey.isKey(creator, title, formatStr)) {
+			return "ERROR" + "Item does not exist!";
+		}
+		synchronized (_writeLock) {
+			View view = _view;
+			int slot = find(view._columns, view._slots, new ItemKey(creator, title, formatStr).spreadHash(), creator,
+					title, formatStr, view._size);
+			int row = view._slots.get(slot) - 1;
+			if (row < 0) {
+				return "ERROR" + "Item does not exist!";
+			}
+			IntTree[] orders = new IntTree[STATES.length + 1];
+			orders[ADDED] = view._orders[ADDED].remove(row, sorting(view._columns, null));
+			for (State state : STATES) {
+				orders[state.ordinal()] = view._orders[state.ordinal()].remove(row, sorting(view._columns, state));
+			}
+			//Probing goes on past a removed slot, so the items after it are still found.
+			Slots slots = view._slots.copy();
+			slots.set(slot, REMOVED);
+			_view = new View(view._columns, view._size, orders, slots);
+			Item item = view._columns.item(row);
+			_CreatorIndex.remove(item.creator());
+			_SearchIndex.remove(view._columns.sequence(row), item);
+			_Aggregates.remove(item);
+			int removed = view._size - orders[ADDED].size();
+			if (removed >= INITIAL_CAPACITY && 2 * removed > orders[ADDED].size()) {
+				_view = compacted(_view);
+			}
+		}
+		return "Success";
+	}
+
+	/**
+	 * Give the item with the specified creator, title and format to another owner,
+	 * as {@link InventoryMan#transferOwner(String, String, String, String)}. The new owner is written
+	 * into a copy of the columns, so queries reading the old view still see the old owner. Only the order
+	 * of the report is sorted by owner, so only it changes, with the row moved to its new place.
+	 * @param creator The artist or author of the item
+	 * @param title The title of the item
+	 * @param formatStr The format of the item
+	 * @param newOwner The new owner of the item
+	 * @return A string, either "Success" if there are no problems or a string beginning with "ERROR" and the rest of the string
+	 * providing some details as to what went wrong.
+	 */
+	public String transferOwner(String creator, String title, String formatStr, String newOwner) {
+		if (!ItemValidator.isOwner(newOwner)) {
+			return "ERROR" + ValidationResult.BAD_OWNER.message();
+		}
+		if (!ItemKey.isKey(creator, title, formatStr)) {
+			return "ERROR" + "Item does not exist!";
+		}
+		synchronized (_writeLock) {
+			View view = _view;
+			int row = row(view, new ItemKey(creator, title, formatStr));
+			if (row < 0) {
+				return "ERROR" + "Item does not exist!";
+			}
+			IntTree rows = view._orders[State.OWNER.ordinal()].remove(row, sorting(view._columns, State.OWNER));
+			Columns columns = view._columns.withOwner(row, view._columns.strings().id(newOwner));
+			IntTree[] orders = view._orders.clone();
+			orders[State.OWNER.ordinal()] = rows.add(row, sorting(columns, State.OWNER));
+			_view = new View(columns, view._size, orders, view._slots);
+			_Aggregates.remove(view._columns.item(row));
+			_Aggregates.add(columns.item(row));
+		}
+		return "Success";
+	}
+
+	/**
+	 * Change the cost of the item with the specified creator, title and format,
+	 * as {@link InventoryMan#updateCost(String, String, String, String)}. The new cost is written into
+	 * a copy of the columns, as a new owner is. No order is sorted by cost, so only the row and the
+	 * summaries of its groups change.
+	 * @param creator The artist or author of the item
+	 * @param title The title of the item
+	 * @param formatStr The format of the item
+	 * @param costStr The new cost of the item
+	 * @return A string, either "Success" if there are no problems or a string beginning with "ERROR" and the rest of the string
+	 * providing some details as to what went wrong.
+	 */
+	public String updateCost(String creator, String title, String formatStr, String costStr) {
+		long costCents = ItemValidator.toCents(costStr);
+		if (costCents == ItemValidator.INVALID_COST) {
+			return "ERROR" + ValidationResult.BAD_COST.message();
+		}
+		if (!ItemKey.isKey(creator, title, formatStr)) {
+			return "ERROR" + "Item does not exist!";
+		}
+		synchronized (_writeLock) {
+			View view = _view;
+			int row = row(view, new ItemKey(creator, title, formatStr));
+			if (row < 0) {
+				return "ERROR" + "Item does not exist!";
+			}
+			Columns columns = view._columns.withCost(row, costStr, costCents);
+			_view = new View(columns, view._size, view._orders, view._slots);
+			_Aggregates.remove(view._columns.item(row));
+			_Aggregates.add(columns.item(row));
+			if (_offHeap && ++_oldCosts >= Math.max(INITIAL_CAPACITY, view._orders[ADDED].size())) {
+				_view = compacted(_view);
+			}
+		}
+		return "Success";
+	}
+
+	/**
+	 * Provide a string showing the details of the item with the specified details,
+	 * as {@link InventoryMan#getItemToDisplay(String, String, String)}.
+	 * @param creator The artist or author of the item
+	 * @param title The title of the item
+	 * @param formatStr The format of the item
+	 * @return A string for the details of the specified item, or "ERROR" if there is no such item.
+	 */
+	public String getItemToDisplay(String creator, String title, String formatStr) {
+		if (!ItemKey.isKey(creator, title, formatStr)) {
+			return "ERROR";
+		}
+		View view = _view;
+		int row = row(view, new ItemKey(creator, title, formatStr));
+		if (row < 0) {
+			return "ERROR";
+		}
+		return view._columns.item(row).asString();
+	}
+
+	/**
+	 * Return a list of of all items in the specified order as a list of strings,
+	 * as {@link InventoryMan#getAll(String)}.
+	 * @param order The order to list the items, either "Creator", "Title" or "Acquisition".
+	 * @return A list of strings providing the details of all items in the specified
+	 * order, or in the order they were added for other orders.
+	 */
+	public List<String> getAll(String order) {
+		return LineIterator.toList(iterateAll(order));
+	}
+
+	/**
+	 * Return one page of all items in the specified order, starting after the item of the cursor,
+	 * as {@link InventoryMan#getAll(String, String, int)}. The place of the cursor is found in the order
+	 * with a binary search, so the cost is the size of the page.
+	 * @param order The order to list the items
+	 * @param afterCursor The cursor of the previous page, or null for the first page.
+	 * @param limit The most items on the page, at least 1.
+	 * @return The page, with a cursor for the next page, or an empty page with an error if the string is not a cursor
+	 * or the limit is less than 1.
+	 */
+	public Page getAll(String order, String afterCursor, int limit) {
+		if (limit <= 0) {
+			return new Page("ERROR" + "The limit of a page must be at least 1!");
+		}
+		View view = _view;
+		State state = State.fromOrder(order);
+		int from = 0;
+		if (afterCursor != null) {
+			PageCursor cursor = PageCursor.parse(afterCursor);
+			if (cursor == null) {
+				return new Page("ERROR" + "Not a cursor of a page!");
+			}
+			from = after(view, state, cursor);
+		}
+		IntTree rows = order(view, state);
+		int to = (int) Math.min(rows.size(), (long) from + limit);
+		List<String> result = new ArrayList<String>(Math.max(to - from, 0));
+		int last = -1;
+		for (IntTree.Walk walk = rows.walk(from); walk.index() < to;) {
+			last = walk.next();
+			result.add(view._columns.item(last).asString());
+		}
+		if (last < 0 || to == rows.size()) {
+			return new Page(result, null);
+		}
+		return new Page(result, new PageCursor(view._columns.key(last), view._columns.day(last),
+				view._columns.sequence(last)).toString());
+	}
+
+	/**
+	 * Append all items in the specified order to a buffer of the caller, each followed by a new line,
+	 * as {@link InventoryMan#appendAll(String, StringBuilder)}.
+	 * @param order The order to list the items
+	 * @param out Where to append the items.
+	 */
+	public void appendAll(String order, StringBuilder out) {
+		View view = _view;
+		for (IntTree.Walk walk = order(view, State.fromOrder(order)).walk(0); walk.hasNext();) {
+			view._columns.item(walk.next()).appendTo(out);
+			out.append('\n');
+		}
+	}
+
+	/**
+	 * Return a list of all items acquired in the specified year in order of
+	 * date of acquisition, as {@link InventoryMan#getItemsAcquiredInYear(String)}.
+	 * @param year The year in which the item should have been acquired
+	 * @return The list of items acquired in the year in order of date of acquisition.
+	 */
+	public List<String> getItemsAcquiredInYear(String year) {
+		return LineIterator.toList(iterateItemsAcquiredInYear(year));
+	}
+
+	/**
+	 * Return a list of all items acquired between the two dates (both included) in order of
+	 * date of acquisition, as {@link InventoryMan#getItemsAcquiredBetween(String, String)}.
+	 * @param fromDateStr The first date of acquisition to include (ISO8601 format)
+	 * @param toDateStr The last date of acquisition to include (ISO8601 format)
+	 * @return The list of items acquired between the dates in order of date of acquisition.
+	 */
+	public List<String> getItemsAcquiredBetween(String fromDateStr, String toDateStr) {
+		return LineIterator.toList(iterateItemsAcquiredBetween(fromDateStr, toDateStr));
+	}
+
+	/**
+	 * Return a list of all creators of items in the inventory in alphabetical order, each once,
+	 * as {@link InventoryMan#getCreators()}.
+	 * @return The list of creators in alphabetical order.
+	 */
+	public List<String> getCreators() {
+		return _CreatorIndex.creators();
+	}
+
+	/**
+	 * Return a list of the creators of items in the inventory whose names start with the
+	 * specified prefix, as {@link InventoryMan#getCreatorsStartingWith(String)}.
+	 * @param prefix The start of the names of the creators.
+	 * @return The list of creators starting with the prefix in alphabetical order.
+	 */
+	public List<String> getCreatorsStartingWith(String prefix) {
+		return _CreatorIndex.creatorsStartingWith(prefix);
+	}
+
+	/**
+	 * Return a list of all items of the specified creator in the order they were added,
+	 * as {@link InventoryMan#getItemsByCreator(String)}. The first of them is found in the
+	 * creator order with a binary search.
+	 * @param creator The artist or author of the items.
+	 * @return The list of the items of the creator, empty if there are none.
+	 */
+	public List<String> getItemsByCreator(String creator) {
+		View view = _view;
+		List<String> result = new ArrayList<String>();
+		if (!_CreatorIndex.contains(creator)) {
+			return result;
+		}
+		Columns columns = view._columns;
+		int creatorId = columns.strings().find(creator);
+		IntTree rows = view._orders[State.CREATOR.ordinal()];
+		for (IntTree.Walk walk = rows.walk(firstWithId(columns, rows, State.CREATOR, creatorId, false)); walk.hasNext();) {
+			int row = walk.next();
+			if (columns.creator(row) != creatorId) {
+				break;
+			}
+			result.add(columns.item(row).asString());
+		}
+		return result;
+	}
+
+	/**
+	 * Return the number of items and the total, lowest and highest cost of the items of each group,
+	 * as {@link InventoryMan#getCostSummary(String)}, from the summaries kept as items are added, removed and changed.
+	 * @param grouping How to group the items, either "Owner", "Format", "Year" or "Type".
+	 * @return The summary of each group, in alphabetical order of the groups, or no groups for other groupings.
+	 */
+	public SortedMap<String, CostSummary> getCostSummary(String grouping) {
+		Grouping by = Grouping.fromName(grouping);
+		if (by == null) {
+			return new TreeMap<String, CostSummary>();
+		}
+		return _Aggregates.summaries(by);
+	}
+
+	/**
+	 * Find the items matching a query, as {@link InventoryMan#find(ItemQuery)}. The rows of the creator,
+	 * of the owner and acquired in the range of dates are each found in their order with binary searches,
+	 * and only the fewest are read. If they are already in the order of the query the search stops at the
+	 * limit, otherwise only the first rows in the order are kept as they are read.
+	 * @param query The filters, order and limit of the items to find.
+	 * @return A list of the strings of the items found.
+	 */
+	public List<String> find(ItemQuery query) {
+		View view = _view;
+		List<String> result = new ArrayList<String>();
+		ItemQuery.Filter filter = query.filter(view._columns.strings());
+		State order = query.order();
+		int limit = query.limit();
+		if (filter._none || limit <= 0) {
+			return result;
+		}
+
+		//Start from all rows in the order of the query, then from any part of an order holding fewer rows.
+		Columns columns = view._columns;
+		IntTree rows = order(view, order);
+		int from = 0;
+		int to = rows.size();
+		boolean inOrder = true;
+		if (filter._creatorId != ItemQuery.Filter.ANY) {
+			IntTree byCreator = view._orders[State.CREATOR.ordinal()];
+			int first = firstWithId(columns, byCreator, State.CREATOR, filter._creatorId, false);
+			int last = firstWithId(columns, byCreator, State.CREATOR, filter._creatorId, true);
+			if (last - first < to - from) {
+				rows = byCreator;
+				from = first;
+				to = last;
+				inOrder = order == null || order == State.CREATOR; //the rows of a creator are in the order added
+			}
+		}
+		if (filter._ownerId != ItemQuery.Filter.ANY) {
+			IntTree byOwner = view._orders[State.OWNER.ordinal()];
+			int first = firstWithId(columns, byOwner, State.OWNER, filter._ownerId, false);
+			int last = firstWithId(columns, byOwner, State.OWNER, filter._ownerId, true);
+			if (last - first < to - from) {
+				rows = byOwner;
+				from = first;
+				to = last;
+				inOrder = false;
+			}
+		}
+		if (filter.hasDays()) {
+			IntTree byDay = view._orders[State.ACQUISITION.ordinal()];
+			int first = firstOnOrAfter(columns, byDay, filter._fromDay);
+			int last = filter._toDay == Integer.MAX_VALUE ? byDay.size() : firstOnOrAfter(columns, byDay, filter._toDay + 1);
+			if (last - first < to - from) {
+				rows = byDay;
+				from = first;
+				to = last;
+				inOrder = order == State.ACQUISITION;
+			}
+		}
+
+		if (inOrder) {
+			for (IntTree.Walk walk = rows.walk(from); walk.index() < to && result.size() < limit;) {
+				int row = walk.next();
+				if (filter.matches(columns, row)) {
+					result.add(columns.item(row).asString());
+				}
+			}
+			return result;
+		}
+
+		//Keep the first rows in the order, the last of them at the head so it is the one dropped.
+		final IntTree.Order sorting = sorting(columns, order);
+		PriorityQueue<Integer> kept = new PriorityQueue<Integer>(Math.min(limit, to - from) + 1, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer row1, Integer row2) {
+				return sorting.compare(row2, row1);
+			}
+		});
+		for (IntTree.Walk walk = rows.walk(from); walk.index() < to;) {
+			int row = walk.next();
+			if (filter.matches(columns, row)) {
+				kept.add(row);
+				if (kept.size() > limit) {
+					kept.poll();
+				}
+			}
+		}
+		int[] found = new int[kept.size()];
+		for (int i = found.length - 1; i >= 0; i--) {
+			found[i] = kept.poll();
+		}
+		for (int row : found) {
+			result.add(columns.item(row).asString());
+		}
+		return result;
+	}
+
+	/**
+	 * Search the titles, creators and publishers of the items for words,
+	 * as {@link InventoryMan#search(String, int)}.
+	 * @param query The words to search for.
+	 * @param limit The most items to return.
+	 * @return A list of the strings of the best matching items.
+	 */
+	public List<String> search(String query, int limit) {
+		View view = _view;
+		List<String> result = new ArrayList<String>();
+
+		//Rows past the view are still being added, and the search index may still hold a removed row.
+		for (int sequence : _SearchIndex.search(query, limit)) {
+			int row = view._columns.row(sequence);
+			if (row >= 0 && row < view._size && row(view, view._columns.key(row)) == row) {
+				result.add(view._columns.item(row).asString());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return a report of the items in the inventory, as {@link InventoryMan#getFlatReport()}.
+	 * @return A list of the name of the flat followed by the items in order of owner.
+	 */
+	public List<String> getFlatReport() {
+		return LineIterator.toList(iterateFlatReport());
+	}
+
+	/**
+	 * Iterate over all items in the specified order, as {@link InventoryMan#iterateAll(String)}.
+	 * The iterator reads the view of when it was made, so items added meanwhile are not reached.
+	 * @param order The order to list the items
+	 * @return An iterator over the strings of the items.
+	 */
+	public Iterator<String> iterateAll(String order) {
+		View view = _view;
+		IntTree rows = order(view, State.fromOrder(order));
+		return render(view, rows, 0, rows.size());
+	}
+
+	/**
+	 * Iterate over the items acquired in the specified year in order of date of acquisition,
+	 * as {@link InventoryMan#iterateItemsAcquiredInYear(String)}.
+	 * @param year The year in which the item should have been acquired
+	 * @return An iterator over the strings of the items.
+	 */
+	public Iterator<String> iterateItemsAcquiredInYear(String year) {
+		int acquisitionYear = InventoryManImpl.parseYear(year);
+		if (acquisitionYear < 0) {
+			return Collections.<String>emptyIterator();
+		}
+		return acquiredBetween((int) LocalDate.of(acquisitionYear, 1, 1).toEpochDay(),
+				(int) LocalDate.of(acquisitionYear, 12, 31).toEpochDay());
+	}
+
+	/**
+	 * Iterate over the items acquired between the two dates (both included) in order of date of
+	 * acquisition, as {@link InventoryMan#iterateItemsAcquiredBetween(String, String)}.
+	 * @param fromDateStr The first date of acquisition to include (ISO8601 format)
+	 * @param toDateStr The last date of acquisition to include (ISO8601 format)
+	 * @return An iterator over the strings of the items.
+	 */
+	public Iterator<String> iterateItemsAcquiredBetween(String fromDateStr, String toDateStr) {
+		int fromDay = ItemValidator.toEpochDay(fromDateStr);
+		int toDay = ItemValidator.toEpochDay(toDateStr);
+		if (fromDay == ItemValidator.INVALID_DAY || toDay == ItemValidator.INVALID_DAY || toDay < fromDay) {
+			return Collections.<String>emptyIterator();
+		}
+		return acquiredBetween(fromDay, toDay);
+	}
+
+	/**
+	 * Iterate over the creators of items in the inventory in alphabetical order,
+	 * as {@link InventoryMan#iterateCreators()}.
+	 * @return An iterator over the creators.
+	 */
+	public Iterator<String> iterateCreators() {
+		return _CreatorIndex.iterator();
+	}
+
+	/**
+	 * Iterate over the lines of the report, the name of the flat first,
+	 * as {@link InventoryMan#iterateFlatReport()}.
+	 * @return An iterator over the lines of the report.
+	 */
+	public Iterator<String> iterateFlatReport() {
+		final View view = _view;
+		final IntTree.Walk walk = view._orders[State.OWNER.ordinal()].walk(0);
+		return new LineIterator() {
+			private boolean _started;
+
+			@Override
+			protected String nextLine() {
+				if (!_started) {
+					_started = true;
+					return _flatName;
+				}
+				return walk.hasNext() ? view._columns.item(walk.next()).asReportLine() : null;
+			}
+		};
+	}
+
+	/**
+	 * Iterate over the records of all items in the order they were added, as
+	 * {@link InventoryMan#iterateRecords()}, reading the view of when it was called.
+	 * @return An iterator over the records of the items.
+	 */
+	public Iterator<ItemRecord> iterateRecords() {
+		final View view = _view;
+		final IntTree.Walk walk = view._orders[ADDED].walk(0);
+		return new Iterator<ItemRecord>() {
+			@Override
+			public boolean hasNext() {
+				return walk.hasNext();
+			}
+
+			@Override
+			public ItemRecord next() {
+				if (!walk.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return view._columns.item(walk.next()).toRecord();
+			}
+		};
+	}
+
+	/**
+	 * Iterate over the items acquired between two days, both included, finding the first one
+	 * in the acquisition order with a binary search on the day column.
+	 * @param fromDay The first epoch day to include.
+	 * @param toDay The last epoch day to include.
+	 * @return An iterator over the strings of the items in order of date of acquisition.
+	 */
+	private Iterator<String> acquiredBetween(int fromDay, int toDay) {
+		View view = _view;
+		IntTree rows = view._orders[State.ACQUISITION.ordinal()];
+		Columns columns = view._columns;
+		int from = firstOnOrAfter(columns, rows, fromDay);
+		int to = firstOnOrAfter(columns, rows, toDay + 1);
+		return render(view, rows, from, to);
+	}
+
+	/**
+	 * Find the first item in the acquisition order acquired on or after a day.
+	 * @param columns The columns of the rows.
+	 * @param rows The rows in the acquisition order.
+	 * @param day The epoch day.
+	 * @return The index in the order of the first item acquired on or after the day, or the size if there is none.
+	 */
+	private static int firstOnOrAfter(final Columns columns, IntTree rows, final int day) {
+		return rows.count(new IntTree.Bound() {
+			@Override
+			boolean isBefore(int row) {
+				return columns.day(row) < day;
+			}
+		});
+	}
+
+	/**
+	 * Find where the items with a creator or owner start or end in the order sorted by it.
+	 * @param columns The columns of the rows.
+	 * @param rows The rows in the order of the state.
+	 * @param state CREATOR or OWNER.
+	 * @param id The id of the creator or owner.
+	 * @param after false for the index of the first item with the id, true for the index after the last.
+	 * @return The index in the order.
+	 */
+	private static int firstWithId(final Columns columns, IntTree rows, final State state, final int id,
+			final boolean after) {
+		return rows.count(new IntTree.Bound() {
+			@Override
+			boolean isBefore(int row) {
+				int rowId = state == State.OWNER ? columns.owner(row) : columns.creator(row);
+				int result = columns.strings().compare(rowId, id);
+				return result < 0 || (after && result == 0);
+			}
+		});
+	}
+
+	/**
+	 * Make the string of each item of part of an order when the iterator reaches it.
+	 * @param view The view.
+	 * @param rows The rows in the order.
+	 * @param from The index in the order of the first item.
+	 * @param to The index in the order after the last item.
+	 * @return An iterator over the strings of the items.
+	 */
+	private static Iterator<String> render(final View view, IntTree rows, int from, final int to) {
+		final IntTree.Walk walk = rows.walk(from);
+		return new LineIterator() {
+			@Override
+			protected String nextLine() {
+				if (walk.index() >= to) {
+					return null;
+				}
+				return view._columns.item(walk.next()).asString();
+			}
+		};
+	}
+
+	/**
+	 * Find the row of an item in a view.
+	 * @param view The view.
+	 * @param key The key of the item.
+	 * @return The row, or -1 if the item is not in the view.
+	 */
+	private static int row(View view, ItemKey key) {
+		int slot = find(view._columns, view._slots, key.spreadHash(), key.creator(), key.title(), key.formatStr(),
+				view._size);
+		return view._slots.get(slot) - 1;
+	}
+
+	/**
+	 * @param view The view.
+	 * @param state The order, or null for the order the items were added.
+	 * @return The rows of the view in the order.
+	 */
+	private static IntTree order(View view, State state) {
+		return view._orders[state == null ? ADDED : state.ordinal()];
+	}
+
+	/**
+	 * Find where a page goes on in an order of a view with a binary search, comparing the rows with
+	 * the values kept in the cursor, so the item of the cursor need not be in the view any more.
+	 * @param view The view.
+	 * @param state The order, or null for the order the items were added.
+	 * @param cursor The cursor of the previous page.
+	 * @return The index in the order of the first row after the cursor.
+	 */
+	private static int after(View view, final State state, final PageCursor cursor) {
+		final Columns columns = view._columns;
+		return order(view, state).count(new IntTree.Bound() {
+			@Override
+			boolean isBefore(int row) {
+				int result = 0;
+				if (state == State.CREATOR) {
+					result = columns.strings().string(columns.creator(row)).compareTo(cursor.key().creator());
+				} else if (state == State.TITLE) {
+					result = columns.title(row).compareTo(cursor.key().title());
+				} else if (state == State.ACQUISITION) {
+					result = Integer.compare(columns.day(row), cursor.acquisitionDay());
+				}
+				return byRow(result, columns.sequence(row), cursor.sequence()) <= 0;
+			}
+		});
+	}
+
+	/**
+	 * Find the slot of an item in a hash table of rows, probing from the slot of its hash.
+	 * Slots hold the row + 1, 0 when empty or REMOVED when the row was removed, and are never
+	 * emptied, so probing goes on past removed rows. A removed slot is filled again with a row being added.
+	 * Rows which are not in the view are skipped.
+	 * @param columns The columns of the rows.
+	 * @param slots The hash table.
+	 * @param hash The spread hash of the key of the item.
+	 * @param size The number of rows in the view.
+	 * @return The slot of the item, or the first removed or empty slot where it would go.
+	 */
+	private static int find(Columns columns, Slots slots, int hash, String creator, String title, String formatStr,
+			int size) {
+		int mask = slots.capacity() - 1;
+		int slot = hash & mask;
+		int free = -1;
+		while (slots.get(slot) != 0) {
+			int row = slots.get(slot) - 1;
+			if (row >= 0 && row < size && columns.hasKey(row, creator, title, formatStr)) {
+				return slot;
+			}
+			if (free < 0 && slots.get(slot) == REMOVED) {
+				free = slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return free < 0 ? slot : free;
+	}
+
+	/**
+	 * Build a larger hash table of the rows of a table, leaving out the removed rows.
+	 * The old table is left as it is for the views using it.
+	 * @param columns The columns of the rows.
+	 * @param old The hash table.
+	 * @param capacity The number of slots, a power of two.
+	 * @return The hash table.
+	 */
+	private static Slots rehash(Columns columns, Slots old, int capacity) {
+		Slots slots = new Slots(capacity);
+		for (int slot = 0; slot < old.capacity(); slot++) {
+			if (old.get(slot) > 0) {
+				place(columns, slots, old.get(slot) - 1);
+			}
+		}
+		return slots;
+	}
+
+	/**
+	 * Put a row into a hash table being built, in the first empty slot from the slot of its hash.
+	 * @param columns The columns of the rows.
+	 * @param slots The hash table.
+	 * @param row The row.
+	 */
+	private static void place(Columns columns, Slots slots, int row) {
+		int mask = slots.capacity() - 1;
+		int slot = columns.key(row).spreadHash() & mask;
+		while (slots.get(slot) != 0) {
+			slot = (slot + 1) & mask;
+		}
+		slots.set(slot, row + 1);
+	}
+
+	/**
+	 * Copy the items of a view into new columns, leaving out the rows of removed items and the strings
+	 * of old costs. The rows keep their order, so each order is the same list of items, and their sequences,
+	 * so cursors and the search index still find them. The old columns are left as they are for the views using them.
+	 * @param view The view.
+	 * @return The view of the new columns.
+	 */
+	private View compacted(View view) {
+		_oldCosts = 0;
+		Columns old = view._columns;
+		IntTree live = view._orders[ADDED];
+		int size = live.size();
+		Columns columns = _offHeap ? new OffHeapColumns(old.strings())
+				: new HeapColumns(old.strings(), Math.max(size, INITIAL_CAPACITY));
+		int[] renumbered = new int[view._size];
+		int[] sequences = new int[size];
+		int capacity = 2 * INITIAL_CAPACITY;
+		while (capacity < 2 * size) {
+			capacity *= 2;
+		}
+		Slots slots = new Slots(capacity);
+		int row = 0;
+		for (IntTree.Walk walk = live.walk(0); walk.hasNext(); row++) {
+			int from = walk.next();
+			renumbered[from] = row;
+			sequences[row] = old.sequence(from);
+			columns = columns.append(row, old.item(from).toRecord(), old.day(from), old.cents(from));
+			place(columns, slots, row);
+		}
+		columns.renumber(sequences, old.sequence(view._size));
+
+		//Renumbering keeps the rows in order, so each order stays sorted.
+		IntTree[] orders = new IntTree[STATES.length + 1];
+		int[] rows = new int[size];
+		for (int i = 0; i < orders.length; i++) {
+			int count = 0;
+			for (IntTree.Walk walk = view._orders[i].walk(0); walk.hasNext();) {
+				rows[count++] = renumbered[walk.next()];
+			}
+			orders[i] = IntTree.of(rows, count);
+		}
+		return new View(columns, size, orders, slots);
+	}
+
+	/**
+	 * Create an order of rows for the orders, the same as {@link Item#sorting(State)} for items.
+	 * Ties are broken by row, which is the order the items were added.
+	 * @param columns The columns of the rows.
+	 * @param state The order, or null for the order the items were added.
+	 * @return The order.
+	 */
+	private static IntTree.Order sorting(final Columns columns, State state) {
+		final StringPool strings = columns.strings();
+		if (state == null) {
+			return new IntTree.Order() {
+				@Override
+				int compare(int row1, int row2) {
+					return Integer.compare(row1, row2);
+				}
+			};
+		}
+		switch(state) {
+		case CREATOR:
+			return new IntTree.Order() {
+				@Override
+				int compare(int row1, int row2) {
+					return byRow(strings.compare(columns.creator(row1), columns.creator(row2)), row1, row2);
+				}
+			};
+		case TITLE:
+			return new IntTree.Order() {
+				@Override
+				int compare(int row1, int row2) {
+					return byRow(columns.title(row1).compareTo(columns.title(row2)), row1, row2);
+				}
+			};
+		case ACQUISITION:
+			return new IntTree.Order() {
+				@Override
+				int compare(int row1, int row2) {
+					return byRow(Integer.compare(columns.day(row1), columns.day(row2)), row1, row2);
+				}
+			};
+		case OWNER:
+			//Owner first, then books before music, then creator and then title.
+			return new IntTree.Order() {
+				@Override
+				int compare(int row1, int row2) {
+					int result = strings.compare(columns.owner(row1), columns.owner(row2));
+					if (result == 0) {
+						result = Integer.compare(columns.type(row1), columns.type(row2));
+					}
+					if (result == 0) {
+						result = strings.compare(columns.creator(row1), columns.creator(row2));
+					}
+					if (result == 0) {
+						result = columns.title(row1).compareTo(columns.title(row2));
+					}
+					return byRow(result, row1, row2);
+				}
+			};
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Break a tie between two rows by the order in which they were added.
+	 * @param result The result of comparing the rows by state.
+	 * @return The result if it is not a tie, otherwise the comparison of the rows.
+	 */
+	private static int byRow(int result, int row1, int row2) {
+		if (result != 0) {
+			return result;
+		}
+		return Integer.compare(row1, row2);
+	}
+
+	/**
+	 * This View class is what queries read: the columns, the number of rows which are
+	 * added, the rows of the items in each order, the order they were added last, and the hash table of rows.
+	 * A new view is published after each batch and each change, and none of its parts changes once published.
+	 */
+	private static final class View {
+		private final Columns _columns;
+		private final int _size;
+		private final IntTree[] _orders;
+		private final Slots _slots;
+
+		View(Columns columns, int size, IntTree[] orders, Slots slots) {
+			_columns = columns;
+			_size = size;
+			_orders = orders;
+			_slots = slots;
+		}
+	}
+
+	/**
+	 * This Slots class is a hash table of rows, kept in chunks of slots. The writer only sets slots
+	 * in a copy of the table a view was published with, which copies a chunk the first time one of its
+	 * slots is set, so a published table never changes and copying it costs only its array of chunks.
+	 */
+	private static final class Slots {
+		private static final int MOST_CHUNK_SLOTS = 1 << 10;
+
+		private final int[][] _chunks;
+		private final boolean[] _copied; //the chunks only this table has, whose slots may be set
+		private final int _chunkShift;
+
+		/**
+		 * Create an empty table.
+		 * @param capacity The number of slots, a power of two.
+		 */
+		Slots(int capacity) {
+			int chunkSlots = Math.min(capacity, MOST_CHUNK_SLOTS);
+			_chunks = new int[capacity / chunkSlots][chunkSlots];
+			_copied = new boolean[_chunks.length];
+			Arrays.fill(_copied, true);
+			_chunkShift = Integer.numberOfTrailingZeros(chunkSlots);
+		}
+
+		/**
+		 * Copy a table, sharing its chunks until a slot in them is set.
+		 * @param slots The table.
+		 */
+		private Slots(Slots slots) {
+			_chunks = slots._chunks.clone();
+			_copied = new boolean[_chunks.length];
+			_chunkShift = slots._chunkShift;
+		}
+
+		/**
+		 * @return A copy of the table, for the writer to set slots in before publishing it.
+		 */
+		Slots copy() {
+			return new Slots(this);
+		}
+
+		/**
+		 * @return The number of slots.
+		 */
+		int capacity() {
+			return _chunks.length << _chunkShift;
+		}
+
+		/**
+		 * @return The value of a slot.
+		 */
+		int get(int slot) {
+			return _chunks[slot >>> _chunkShift][slot & ((1 << _chunkShift) - 1)];
+		}
+
+		/**
+		 * Set a slot of a table which is not published yet.
+		 * @param slot The slot.
+		 * @param value The value.
+		 */
+		void set(int slot, int value) {
+			int chunk = slot >>> _chunkShift;
+			if (!_copied[chunk]) {
+				_chunks[chunk] = _chunks[chunk].clone();
+				_copied[chunk] = true;
+			}
+			_chunks[chunk][slot & ((1 << _chunkShift) - 1)] = value;
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package inventoryman;
+
+import java.util.Arrays;
+
+/**
+ * This Columns abstract class holds the values of the items of a {@link ColumnarInventoryMan},
+ * indexed by row, the order the items were added. Creator, owner, format and publisher are ids
+ * in the pool of strings of the inventory, the type is the ordinal of {@link ItemType}.
+ * <p>
+ * Only the writer appends rows. Readers may read any row below the size of the view they were
+ * given while the writer appends, since rows are never changed once written.
+ * <p>
+ * The values which change, the owner and the cost, are kept in chunks of {@link #CHUNK_ROWS} rows:
+ * giving an item to another owner or repricing it copies the chunk of its row and the array of chunks
+ * into a copy of the columns, see {@link #withOwner(int, int)} and {@link #withCost(int, String, long)},
+ * so the columns of a view already published never change. The owners and the costs in cents are kept
+ * here, in chunks on the heap, and the costs as given by the subclasses.
+ * <p>
+ * Each row also has a sequence, the order its item was added to the inventory, which stays the same
+ * when the rows of removed items are left out of new columns and the rows are numbered anew.
+ *
+ */
+abstract class Columns implements Cloneable {
+	/**
+	 * The number of rows in a chunk of the values which change.
+	 */
+	static final int CHUNK_ROWS = 1 << 10;
+
+	private final StringPool _strings;
+	//The arrays of chunks are replaced when a chunk is added, so readers never see a half-copied array.
+	private volatile int[][] _owners;
+	private volatile long[][] _cents;
+	//The sequences of the rows copied when the columns were made, in order; the rows appended since go on from _firstAppended.
+	private int[] _sequences;
+	private int _firstAppended;
+
+	/**
+	 * @param strings The pool of strings of the inventory.
+	 */
+	Columns(StringPool strings) {
+		_strings = strings;
+		_owners = new int[0][];
+		_cents = new long[0][];
+		_sequences = new int[0];
+	}
+
+	/**
+	 * Share the pool of strings and the owners of other columns, to copy their rows into larger columns.
+	 * @param columns The columns copied.
+	 */
+	Columns(Columns columns) {
+		_strings = columns._strings;
+		_owners = columns._owners;
+		_cents = columns._cents;
+		_sequences = columns._sequences;
+		_firstAppended = columns._firstAppended;
+	}
+
+	/**
+	 * @return The pool of strings of the inventory, which the ids in the columns are of.
+	 */
+	final StringPool strings() {
+		return _strings;
+	}
+
+	/**
+	 * Append the values of a checked record as a row.
+	 * @param row The row, which is the number of rows already appended.
+	 * @param record The record.
+	 * @param acquisitionDay The acquisition date of the record as an epoch day.
+	 * @param costCents The cost of the record in cents.
+	 * @return The columns holding the row, either these columns or a larger copy of them.
+	 */
+	abstract Columns append(int row, ItemRecord record, int acquisitionDay, long costCents);
+
+	/**
+	 * Number the rows copied into new columns, before anything else is appended or the columns are read.
+	 * @param sequences The sequence of each row copied, in increasing order.
+	 * @param firstAppended The sequence of the first row appended after them.
+	 */
+	final void renumber(int[] sequences, int firstAppended) {
+		_sequences = sequences;
+		_firstAppended = firstAppended;
+	}
+
+	/**
+	 * @return The sequence of the row, the order its item was added to the inventory.
+	 */
+	final int sequence(int row) {
+		return row < _sequences.length ? _sequences[row] : _firstAppended + row - _sequences.length;
+	}
+
+	/**
+	 * Find the row of a sequence with a binary search.
+	 * @param sequence The sequence.
+	 * @return The row, which may not be appended yet, or -1 if the row was left out when the columns were made.
+	 */
+	final int row(int sequence) {
+		if (sequence >= _firstAppended) {
+			return _sequences.length + sequence - _firstAppended;
+		}
+		return Math.max(Arrays.binarySearch(_sequences, sequence), -1);
+	}
+
+	/**
+	 * Write the owner and the cost in cents of a row being appended. The row is not read yet,
+	 * so they are written in place.
+	 * @param row The row.
+	 * @param owner The id of the owner.
+	 * @param costCents The cost in cents.
+	 */
+	final void appendChanging(int row, int owner, long costCents) {
+		int chunk = row / CHUNK_ROWS;
+		int[][] owners = _owners;
+		long[][] cents = _cents;
+		if (chunk == owners.length) {
+			owners = Arrays.copyOf(owners, chunk + 1);
+			owners[chunk] = new int[CHUNK_ROWS];
+			cents = Arrays.copyOf(cents, chunk + 1);
+			cents[chunk] = new long[CHUNK_ROWS];
+			_owners = owners;
+			_cents = cents;
+		}
+		owners[chunk][row % CHUNK_ROWS] = owner;
+		cents[chunk][row % CHUNK_ROWS] = costCents;
+	}
+
+	/**
+	 * Give the item of a row to another owner, leaving these columns as they are. The copy shares
+	 * every other value, and the rows the writer appends to it, with these columns.
+	 * @param row The row.
+	 * @param owner The id of the new owner.
+	 * @return A copy of the columns with the new owner of the row.
+	 */
+	final Columns withOwner(int row, int owner) {
+		Columns columns = copy();
+		int[][] owners = _owners.clone();
+		int chunk = row / CHUNK_ROWS;
+		owners[chunk] = owners[chunk].clone();
+		owners[chunk][row % CHUNK_ROWS] = owner;
+		columns._owners = owners;
+		return columns;
+	}
+
+	/**
+	 * Reprice the item of a row, leaving these columns as they are, as {@link #withOwner(int, int)}.
+	 * @param row The row.
+	 * @param costStr The new cost as given.
+	 * @param costCents The new cost in cents.
+	 * @return A copy of the columns with the new cost of the row.
+	 */
+	final Columns withCost(int row, String costStr, long costCents) {
+		Columns columns = copy();
+		long[][] cents = _cents.clone();
+		int chunk = row / CHUNK_ROWS;
+		cents[chunk] = cents[chunk].clone();
+		cents[chunk][row % CHUNK_ROWS] = costCents;
+		columns._cents = cents;
+		columns.copyCost(row, costStr);
+		return columns;
+	}
+
+	/**
+	 * @return A copy of the columns sharing every value with them.
+	 */
+	private Columns copy() {
+		try {
+			return (Columns) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Write the cost as given of a row into columns just copied by {@link #withCost(int, String, long)},
+	 * replacing the array of chunks and the chunk of the row with copies before writing into them.
+	 * @param row The row.
+	 * @param costStr The new cost as given.
+	 */
+	abstract void copyCost(int row, String costStr);
+
+	/**
+	 * @return The ordinal of the type of the item of the row.
+	 */
+	abstract int type(int row);
+
+	/**
+	 * @return The id of the creator of the item of the row.
+	 */
+	abstract int creator(int row);
+
+	/**
+	 * @return The title of the item of the row.
+	 */
+	abstract String title(int row);
+
+	/**
+	 * @return The acquisition date of the item of the row as an epoch day.
+	 */
+	abstract int day(int row);
+
+	/**
+	 * @return The id of the owner of the item of the row.
+	 */
+	final int owner(int row) {
+		return _owners[row / CHUNK_ROWS][row % CHUNK_ROWS];
+	}
+
+	/**
+	 * @return The cost of the item of the row in cents.
+	 */
+	final long cents(int row) {
+		return _cents[row / CHUNK_ROWS][row % CHUNK_ROWS];
+	}
+
+	/**
+	 * @return The id of the format of the item of the row.
+	 */
+	abstract int format(int row);
+
+	/**
+	 * Create the item of a row, to display it.
+	 * @param row The row.
+	 * @return The item.
+	 */
+	abstract Item item(int row);
+
+	/**
+	 * @return The key of the item of the row.
+	 */
+	ItemKey key(int row) {
+		return new ItemKey(_strings.string(creator(row)), title(row), _strings.string(format(row)));
+	}
+
+	/**
+	 * Check whether the item of a row has the specified creator, title and format.
+	 * @return true if it has.
+	 */
+	boolean hasKey(int row, String creator, String title, String formatStr) {
+		return _strings.string(format(row)).equals(formatStr) && _strings.string(creator(row)).equals(creator)
+				&& title(row).equals(title);
+	}
+}
@@ -0,0 +1,135 @@
+package inventoryman;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * This CostAggregates class keeps a {@link CostSummary} for every group of every {@link Grouping},
+ * updated as items are added, removed and changed, so summing the costs of an inventory costs
+ * the number of groups rather than the number of items. Each group also keeps how many of its
+ * items have each cost, so the lowest and highest are found again when an item is removed.
+ * <p>
+ * Only the writer adds and removes. Each summary is replaced whole, so readers never lock and
+ * never see the count of a group without its total.
+ *
+ */
+final class CostAggregates {
+	private final Map<Grouping, ConcurrentNavigableMap<String, CostSummary>> _summaries =
+			new EnumMap<Grouping, ConcurrentNavigableMap<String, CostSummary>>(Grouping.class);
+
+	//The number of items with each cost, by group. Only used by the writer.
+	private final Map<Grouping, Map<String, NavigableMap<Long, Integer>>> _costs =
+			new EnumMap<Grouping, Map<String, NavigableMap<Long, Integer>>>(Grouping.class);
+
+	/**
+	 * Create the summaries of an empty inventory.
+	 */
+	CostAggregates() {
+		for (Grouping grouping : Grouping.values()) {
+			_summaries.put(grouping, new ConcurrentSkipListMap<String, CostSummary>());
+			_costs.put(grouping, new HashMap<String, NavigableMap<Long, Integer>>());
+		}
+	}
+
+	/**
+	 * Count an item in the group of each grouping it belongs to.
+	 * @param item The item.
+	 */
+	void add(Item item) {
+		for (Grouping grouping : Grouping.values()) {
+			change(grouping, group(grouping, item), item._costCents, 1);
+		}
+	}
+
+	/**
+	 * Take an item out of the groups it was counted in. Must be done before a value it is grouped by changes.
+	 * @param item The item.
+	 */
+	void remove(Item item) {
+		for (Grouping grouping : Grouping.values()) {
+			change(grouping, group(grouping, item), item._costCents, -1);
+		}
+	}
+
+	/**
+	 * @param grouping The grouping.
+	 * @return A copy of the summaries of the groups, in alphabetical order of the groups.
+	 */
+	SortedMap<String, CostSummary> summaries(Grouping grouping) {
+		return new TreeMap<String, CostSummary>(_summaries.get(grouping));
+	}
+
+	/**
+	 * @param grouping The grouping.
+	 * @param group The group.
+	 * @return The number of items of the group.
+	 */
+	int count(Grouping grouping, String group) {
+		CostSummary summary = _summaries.get(grouping).get(group);
+		return summary == null ? 0 : summary.getCount();
+	}
+
+	/**
+	 * Count one item more or less in a group and publish the new summary of the group.
+	 * @param grouping The grouping.
+	 * @param group The group.
+	 * @param cents The cost of the item.
+	 * @param delta 1 to add the item, -1 to remove it.
+	 */
+	private void change(Grouping grouping, String group, long cents, int delta) {
+		Map<String, NavigableMap<Long, Integer>> groups = _costs.get(grouping);
+		NavigableMap<Long, Integer> costs = groups.get(group);
+		if (costs == null) {
+			costs = new TreeMap<Long, Integer>();
+			groups.put(group, costs);
+		}
+		Integer items = costs.get(cents);
+		int left = (items == null ? 0 : items) + delta;
+		if (left == 0) {
+			costs.remove(cents);
+		} else {
+			costs.put(cents, left);
+		}
+		ConcurrentNavigableMap<String, CostSummary> summaries = _summaries.get(grouping);
+		if (costs.isEmpty()) {
+			groups.remove(group);
+			summaries.remove(group);
+			return;
+		}
+		CostSummary summary = summaries.get(group);
+		int count = (summary == null ? 0 : summary.getCount()) + delta;
+		long totalCents = (summary == null ? 0 : summary.getTotalCents()) + delta * cents;
+		summaries.put(group, new CostSummary(count, totalCents, costs.firstKey(), costs.lastKey()));
+	}
+
+	/**
+	 * @param year A year of acquisition.
+	 * @return The group of the year, padded to four digits so the groups sort as the years do.
+	 */
+	static String yearGroup(int year) {
+		return String.format("%04d", year);
+	}
+
+	/**
+	 * @return The group of an item in a grouping: its owner, its format, the year it was acquired, or
+	 * "Book" or "Music".
+	 */
+	private static String group(Grouping grouping, Item item) {
+		switch (grouping) {
+		case OWNER:
+			return item.owner();
+		case FORMAT:
+			return item.format();
+		case YEAR:
+			return yearGroup(item.acquisitionYear());
+		default:
+			return item.type() == ItemType.BOOK ? "Book" : "Music";
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package inventoryman;
+
+/**
+ * This CostSummary class holds the number of items of a group and the total, lowest and highest
+ * of their costs, in cents, as given by {@link InventoryMan#getCostSummary(String)}. Costs are
+ * added up in whole cents, so the total is exact.
+ *
+ */
+public final class CostSummary {
+	private final int _count;
+	private final long _totalCents;
+	private final long _minCents;
+	private final long _maxCents;
+
+	/**
+	 * Create a summary.
+	 * @param count The number of items, at least 1.
+	 * @param totalCents The total of the costs in cents.
+	 * @param minCents The lowest cost in cents.
+	 * @param maxCents The highest cost in cents.
+	 */
+	CostSummary(int count, long totalCents, long minCents, long maxCents) {
+		_count = count;
+		_totalCents = totalCents;
+		_minCents = minCents;
+		_maxCents = maxCents;
+	}
+
+	/**
+	 * @return The number of items of the group.
+	 */
+	public int getCount() {
+		return _count;
+	}
+
+	/**
+	 * @return The total of the costs of the items of the group, in cents.
+	 */
+	public long getTotalCents() {
+		return _totalCents;
+	}
+
+	/**
+	 * @return The lowest cost of an item of the group, in cents.
+	 */
+	public long getMinCents() {
+		return _minCents;
+	}
+
+	/**
+	 * @return The highest cost of an item of the group, in cents.
+	 */
+	public long getMaxCents() {
+		return _maxCents;
+	}
+}
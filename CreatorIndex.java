@@ -0,0 +1,93 @@
+package inventoryman;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * This CreatorIndex class keeps the creators of the items of an inventory in alphabetical order,
+ * each with the number of items it created, so listing the creators costs the number of creators
+ * rather than the number of items, and creators starting with a prefix are found at once.
+ * <p>
+ * Only the writer adds and removes. Readers never lock.
+ *
+ */
+final class CreatorIndex {
+	private final ConcurrentNavigableMap<String, Integer> _counts = new ConcurrentSkipListMap<String, Integer>();
+
+	/**
+	 * Count one more item of a creator.
+	 * @param creator The creator.
+	 */
+	void add(String creator) {
+		Integer count = _counts.get(creator);
+		_counts.put(creator, count == null ? 1 : count + 1);
+	}
+
+	/**
+	 * Count one less item of a creator, dropping the creator when it has no items left.
+	 * @param creator The creator.
+	 */
+	void remove(String creator) {
+		Integer count = _counts.get(creator);
+		if (count == null) {
+			return;
+		}
+		if (count == 1) {
+			_counts.remove(creator);
+		} else {
+			_counts.put(creator, count - 1);
+		}
+	}
+
+	/**
+	 * @param creator The creator.
+	 * @return true if the creator has items.
+	 */
+	boolean contains(String creator) {
+		return _counts.containsKey(creator);
+	}
+
+	/**
+	 * @param creator The creator.
+	 * @return The number of items of the creator.
+	 */
+	int count(String creator) {
+		Integer count = _counts.get(creator);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * @return The creators in alphabetical order.
+	 */
+	List<String> creators() {
+		return new ArrayList<String>(_counts.keySet());
+	}
+
+	/**
+	 * @return An iterator over the creators in alphabetical order, which sees creators added meanwhile
+	 * if they come after it.
+	 */
+	Iterator<String> iterator() {
+		return _counts.keySet().iterator();
+	}
+
+	/**
+	 * @param prefix The start of the creators.
+	 * @return The creators which start with the prefix, in alphabetical order.
+	 */
+	List<String> creatorsStartingWith(String prefix) {
+		List<String> result = new ArrayList<String>();
+
+		//Creators with the prefix come first among those not before it.
+		for (String creator : _counts.tailMap(prefix, true).keySet()) {
+			if (!creator.startsWith(prefix)) {
+				break;
+			}
+			result.add(creator);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,29 @@
+package inventoryman;
+
+/**
+ * An enum FsyncPolicy provides constants for when the write-ahead log of an inventory
+ * forces the items added to disk, trading the speed of adding items against how many
+ * added items a crash of the machine can lose.
+ *
+ * @see WriteAheadLog
+ */
+public enum FsyncPolicy {
+	/**
+	 * Every item is forced to disk on its own before the add returns. Nothing is lost.
+	 */
+	ALWAYS,
+	/**
+	 * Every add waits until its item is forced to disk, but adds waiting at the same time
+	 * share one force (group commit). Nothing is lost.
+	 */
+	GROUP,
+	/**
+	 * Items are written to the file when added and forced to disk by a background thread
+	 * every {@link WriteAheadLog#PERIOD_MILLIS} milliseconds. A crash can lose the items of the last period.
+	 */
+	PERIODIC,
+	/**
+	 * Items are written to the file when added and only forced to disk when the log is closed.
+	 */
+	NEVER;
+}
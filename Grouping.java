@@ -0,0 +1,29 @@
+package inventoryman;
+
+/**
+ * An enum Grouping provides constants for the ways items can be grouped for
+ * {@link InventoryMan#getCostSummary(String)}: by owner, by format, by year of acquisition
+ * or by type, book or music.
+ *
+ */
+public enum Grouping {
+	OWNER, FORMAT, YEAR, TYPE;
+
+	/**
+	 * Find the grouping for a name of {@link InventoryMan#getCostSummary(String)}.
+	 * @param name The name, either "Owner", "Format", "Year" or "Type".
+	 * @return The grouping, or null if it is not one of the names.
+	 */
+	public static Grouping fromName(String name) {
+		if ("Owner".equals(name)) {
+			return OWNER;
+		}else if ("Format".equals(name)) {
+			return FORMAT;
+		}else if ("Year".equals(name)) {
+			return YEAR;
+		}else if ("Type".equals(name)) {
+			return TYPE;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,129 @@
+package inventoryman;
+
+import java.util.Arrays;
+
+/**
+ * This HeapColumns class holds the values of the items in arrays on the heap, one array per value
+ * but the owner and the cost in cents, which {@link Columns} keeps.
+ * Titles, release dates and costs as given are kept as strings since they rarely repeat.
+ * When the arrays are full they are copied into larger ones, so views of the old arrays stay valid.
+ * The costs as given change, so they are kept in chunks like those of {@link Columns}, copied when an item is repriced.
+ *
+ */
+final class HeapColumns extends Columns {
+	private final byte[] _types;
+	private final int[] _creators;
+	private final String[] _titles;
+	private final String[] _releases;
+	private final int[] _days;
+	//The array of chunks is replaced when a chunk is added, so readers never see a half-copied array.
+	private volatile String[][] _costs;
+	private final int[] _formats;
+	private final int[] _publishers;
+
+	/**
+	 * Create empty columns.
+	 * @param strings The pool of strings of the inventory.
+	 * @param capacity The number of rows.
+	 */
+	HeapColumns(StringPool strings, int capacity) {
+		super(strings);
+		_types = new byte[capacity];
+		_creators = new int[capacity];
+		_titles = new String[capacity];
+		_releases = new String[capacity];
+		_days = new int[capacity];
+		_costs = new String[0][];
+		_formats = new int[capacity];
+		_publishers = new int[capacity];
+	}
+
+	/**
+	 * Copy columns into larger columns.
+	 * @param columns The columns to copy.
+	 * @param capacity The number of rows.
+	 */
+	private HeapColumns(HeapColumns columns, int capacity) {
+		super(columns);
+		_types = Arrays.copyOf(columns._types, capacity);
+		_creators = Arrays.copyOf(columns._creators, capacity);
+		_titles = Arrays.copyOf(columns._titles, capacity);
+		_releases = Arrays.copyOf(columns._releases, capacity);
+		_days = Arrays.copyOf(columns._days, capacity);
+		_costs = columns._costs;
+		_formats = Arrays.copyOf(columns._formats, capacity);
+		_publishers = Arrays.copyOf(columns._publishers, capacity);
+	}
+
+	@Override
+	Columns append(int row, ItemRecord record, int acquisitionDay, long costCents) {
+		if (row == _types.length) {
+			return new HeapColumns(this, row * 2).append(row, record, acquisitionDay, costCents);
+		}
+		_types[row] = (byte) record.getType().ordinal();
+		_creators[row] = strings().id(record.getCreator());
+		_titles[row] = record.getTitle();
+		_releases[row] = record.getPublicationYear();
+		_days[row] = acquisitionDay;
+		appendChanging(row, strings().id(record.getOwner()), costCents);
+		int chunk = row / CHUNK_ROWS;
+		String[][] costs = _costs;
+		if (chunk == costs.length) {
+			costs = Arrays.copyOf(costs, chunk + 1);
+			costs[chunk] = new String[CHUNK_ROWS];
+			_costs = costs;
+		}
+		costs[chunk][row % CHUNK_ROWS] = record.getCostStr();
+		_formats[row] = strings().id(record.getFormatStr());
+		_publishers[row] = strings().id(record.getPublisher());
+		return this;
+	}
+
+	@Override
+	void copyCost(int row, String costStr) {
+		String[][] costs = _costs.clone();
+		int chunk = row / CHUNK_ROWS;
+		costs[chunk] = costs[chunk].clone();
+		costs[chunk][row % CHUNK_ROWS] = costStr;
+		_costs = costs;
+	}
+
+	@Override
+	int type(int row) {
+		return _types[row];
+	}
+
+	@Override
+	int creator(int row) {
+		return _creators[row];
+	}
+
+	@Override
+	String title(int row) {
+		return _titles[row];
+	}
+
+	@Override
+	int day(int row) {
+		return _days[row];
+	}
+
+	@Override
+	int format(int row) {
+		return _formats[row];
+	}
+
+	@Override
+	Item item(int row) {
+		String creator = strings().string(_creators[row]);
+		String owner = strings().string(owner(row));
+		String formatStr = strings().string(_formats[row]);
+		String costStr = _costs[row / CHUNK_ROWS][row % CHUNK_ROWS];
+		if (_types[row] == ItemType.BOOK.ordinal()) {
+			return new Book(creator, _titles[row], _releases[row], _days[row], owner, costStr, cents(row),
+					formatStr, strings().string(_publishers[row]));
+		}
+		return new Music(creator, _titles[row], _releases[row], _days[row], owner, costStr, cents(row),
+				formatStr);
+	}
+}
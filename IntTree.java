@@ -0,0 +1,543 @@
+package inventoryman;
+
+import java.util.Arrays;
+
+/**
+ * This IntTree class is a sorted sequence of ints, such as the rows of an order or the ids of
+ * the items with a word, which is never changed once made. Adding or removing an int makes a new tree
+ * sharing all but the path down to the int, so both cost the logarithm of the size, and readers
+ * of the old tree see it whole.
+ * <p>
+ * The ints sit in leaves of up to LEAF ints. Inner nodes hold up to FANOUT children, with the first
+ * int of each and the number of ints up to its end, so the place of an int and the int at an index
+ * are both found from the root down.
+ *
+ */
+final class IntTree {
+	static final IntTree EMPTY = new IntTree(new int[0], 0);
+
+	private static final int LEAF = 64;
+	private static final int FANOUT = 32;
+
+	//A leaf is an int[], an inner node an Inner.
+	private final Object _root;
+	private final int _size;
+
+	private IntTree(Object root, int size) {
+		_root = root;
+		_size = size;
+	}
+
+	/**
+	 * This Order abstract class compares two ints of a tree, as a comparator would without boxing them.
+	 */
+	abstract static class Order {
+		/**
+		 * The order of the ints themselves.
+		 */
+		static final Order NATURAL = new Order() {
+			@Override
+			int compare(int value1, int value2) {
+				return Integer.compare(value1, value2);
+			}
+		};
+
+		/**
+		 * @return Less than 0, 0 or more than 0 as the first int comes before, with or after the second.
+		 */
+		abstract int compare(int value1, int value2);
+	}
+
+	/**
+	 * This Bound abstract class is a place in a tree, such as where a day starts in the acquisition order:
+	 * every int of the tree before it is before it, and none after.
+	 */
+	abstract static class Bound {
+		/**
+		 * @return true if the int comes before the place.
+		 */
+		abstract boolean isBefore(int value);
+	}
+
+	/**
+	 * Make a tree of ints already in order.
+	 * @param values The ints, sorted.
+	 * @param count The number of ints.
+	 * @return The tree, with its nodes three quarters full, so adding to it does not split them at once.
+	 */
+	static IntTree of(int[] values, int count) {
+		if (count == 0) {
+			return EMPTY;
+		}
+		int fill = LEAF * 3 / 4;
+		Object[] nodes = new Object[(count + fill - 1) / fill];
+		for (int i = 0; i < nodes.length; i++) {
+			int from = (int) ((long) count * i / nodes.length);
+			int to = (int) ((long) count * (i + 1) / nodes.length);
+			nodes[i] = Arrays.copyOfRange(values, from, to);
+		}
+		fill = FANOUT * 3 / 4;
+		while (nodes.length > 1) {
+			Object[] parents = new Object[(nodes.length + fill - 1) / fill];
+			for (int i = 0; i < parents.length; i++) {
+				int from = (int) ((long) nodes.length * i / parents.length);
+				int to = (int) ((long) nodes.length * (i + 1) / parents.length);
+				parents[i] = Inner.of(Arrays.copyOfRange(nodes, from, to));
+			}
+			nodes = parents;
+		}
+		return new IntTree(nodes[0], count);
+	}
+
+	/**
+	 * Sort ints in an order without boxing them, by merging runs of growing length.
+	 * @param values The ints.
+	 * @param count The number of ints to sort, from the start of the array.
+	 * @param order The order.
+	 */
+	static void sort(int[] values, int count, Order order) {
+		int[] from = values;
+		int[] to = new int[count];
+		for (int width = 1; width < count; width *= 2) {
+			for (int low = 0; low < count; low += 2 * width) {
+				int middle = Math.min(low + width, count);
+				int high = Math.min(low + 2 * width, count);
+				int i = low;
+				int j = middle;
+				int k = low;
+				while (i < middle && j < high) {
+					to[k++] = order.compare(from[j], from[i]) < 0 ? from[j++] : from[i++];
+				}
+				System.arraycopy(from, i, to, k, middle - i);
+				System.arraycopy(from, j, to, k + middle - i, high - j);
+			}
+			int[] merged = to;
+			to = from;
+			from = merged;
+		}
+		if (from != values) {
+			System.arraycopy(from, 0, values, 0, count);
+		}
+	}
+
+	/**
+	 * @return The number of ints.
+	 */
+	int size() {
+		return _size;
+	}
+
+	/**
+	 * @param index The index, from 0 to size - 1.
+	 * @return The int at the index.
+	 */
+	int get(int index) {
+		Object node = _root;
+		while (node instanceof Inner) {
+			Inner inner = (Inner) node;
+			int child = inner.childAt(index);
+			index -= inner.start(child);
+			node = inner._children[child];
+		}
+		return ((int[]) node)[index];
+	}
+
+	/**
+	 * @param bound A place in the tree.
+	 * @return The number of ints before the place, which is the index of the first int after it.
+	 */
+	int count(Bound bound) {
+		Object node = _root;
+		int base = 0;
+		while (node instanceof Inner) {
+			Inner inner = (Inner) node;
+			//The place is in the last child whose first int is before it.
+			int before = countBefore(inner._firsts, inner._firsts.length, bound);
+			if (before == 0) {
+				return base;
+			}
+			base += inner.start(before - 1);
+			node = inner._children[before - 1];
+		}
+		int[] leaf = (int[]) node;
+		return base + countBefore(leaf, leaf.length, bound);
+	}
+
+	/**
+	 * @param value An int.
+	 * @param order The order of the tree.
+	 * @return The number of ints which come before the int in the order.
+	 */
+	int indexOf(int value, Order order) {
+		return count(before(value, order));
+	}
+
+	/**
+	 * @param value An int.
+	 * @param order The order of the tree.
+	 * @return true if the int is in the tree.
+	 */
+	boolean contains(int value, Order order) {
+		int index = indexOf(value, order);
+		return index < _size && get(index) == value;
+	}
+
+	/**
+	 * Add an int which is not in the tree.
+	 * @param value The int.
+	 * @param order The order of the tree.
+	 * @return The new tree.
+	 */
+	IntTree add(int value, Order order) {
+		Object[] nodes = add(_root, value, before(value, order));
+		return new IntTree(nodes.length == 1 ? nodes[0] : Inner.of(nodes), _size + 1);
+	}
+
+	/**
+	 * Add ints which are not in the tree. Few ints are added one by one, and many are merged with all the
+	 * ints of the tree into a new one, so the cost is never more than that of making the tree again.
+	 * @param values The ints, sorted in the order.
+	 * @param count The number of ints.
+	 * @param order The order of the tree.
+	 * @return The new tree.
+	 */
+	IntTree addAll(int[] values, int count, Order order) {
+		if ((long) count * LEAF < _size) {
+			IntTree tree = this;
+			for (int i = 0; i < count; i++) {
+				tree = tree.add(values[i], order);
+			}
+			return tree;
+		}
+		int[] merged = new int[_size + count];
+		Walk walk = walk(0);
+		int k = 0;
+		for (int i = 0; i < count; i++) {
+			while (walk.hasNext() && order.compare(walk.peek(), values[i]) < 0) {
+				merged[k++] = walk.next();
+			}
+			merged[k++] = values[i];
+		}
+		while (walk.hasNext()) {
+			merged[k++] = walk.next();
+		}
+		return of(merged, k);
+	}
+
+	/**
+	 * Remove an int.
+	 * @param value The int.
+	 * @param order The order of the tree.
+	 * @return The new tree, or this tree if the int is not in it.
+	 */
+	IntTree remove(int value, Order order) {
+		if (!contains(value, order)) {
+			return this;
+		}
+		Object root = remove(_root, value, order);
+		if (root == null) {
+			return EMPTY;
+		}
+		while (root instanceof Inner && ((Inner) root)._children.length == 1) {
+			root = ((Inner) root)._children[0];
+		}
+		return new IntTree(root, _size - 1);
+	}
+
+	/**
+	 * @param from The index of the first int to walk over.
+	 * @return A walk over the ints from the index to the end.
+	 */
+	Walk walk(int from) {
+		return new Walk(this, from);
+	}
+
+	/**
+	 * This Walk class goes over the ints of a tree in order, a leaf at a time,
+	 * and can jump ahead to any index.
+	 */
+	static final class Walk {
+		private final IntTree _tree;
+		private int[] _leaf = new int[0];
+		private int _leafStart;
+		private int _index;
+
+		private Walk(IntTree tree, int from) {
+			_tree = tree;
+			_index = from;
+		}
+
+		/**
+		 * @return true if there are more ints.
+		 */
+		boolean hasNext() {
+			return _index < _tree._size;
+		}
+
+		/**
+		 * @return The next int, without going past it.
+		 */
+		int peek() {
+			int at = _index - _leafStart;
+			if (at < 0 || at >= _leaf.length) {
+				findLeaf();
+				at = _index - _leafStart;
+			}
+			return _leaf[at];
+		}
+
+		/**
+		 * @return The next int.
+		 */
+		int next() {
+			int value = peek();
+			_index++;
+			return value;
+		}
+
+		/**
+		 * @return The index of the next int.
+		 */
+		int index() {
+			return _index;
+		}
+
+		/**
+		 * Go on from an index.
+		 * @param index The index of the next int.
+		 */
+		void moveTo(int index) {
+			_index = index;
+		}
+
+		/**
+		 * Go past the ints which come before an int, if the next one does.
+		 * @param value The int.
+		 * @param order The order of the tree.
+		 */
+		void skipTo(int value, Order order) {
+			if (hasNext() && order.compare(peek(), value) < 0) {
+				_index = _tree.indexOf(value, order);
+			}
+		}
+
+		/**
+		 * Find the leaf of the next int.
+		 */
+		private void findLeaf() {
+			Object node = _tree._root;
+			int index = _index;
+			int start = 0;
+			while (node instanceof Inner) {
+				Inner inner = (Inner) node;
+				int child = inner.childAt(index - start);
+				start += inner.start(child);
+				node = inner._children[child];
+			}
+			_leaf = (int[]) node;
+			_leafStart = start;
+		}
+	}
+
+	/**
+	 * @return The place just before an int in an order.
+	 */
+	private static Bound before(final int value, final Order order) {
+		return new Bound() {
+			@Override
+			boolean isBefore(int other) {
+				return order.compare(other, value) < 0;
+			}
+		};
+	}
+
+	/**
+	 * @return The number of the first ints of an array which are before the place.
+	 */
+	private static int countBefore(int[] values, int length, Bound bound) {
+		int low = 0;
+		int high = length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (bound.isBefore(values[middle])) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Add an int under a node.
+	 * @return The new node, or two nodes if it had to be split.
+	 */
+	private static Object[] add(Object node, int value, Bound bound) {
+		if (node instanceof int[]) {
+			int[] leaf = (int[]) node;
+			int at = countBefore(leaf, leaf.length, bound);
+			int[] result = new int[leaf.length + 1];
+			System.arraycopy(leaf, 0, result, 0, at);
+			result[at] = value;
+			System.arraycopy(leaf, at, result, at + 1, leaf.length - at);
+			if (result.length <= LEAF) {
+				return new Object[] { result };
+			}
+			//Ints added in order all go at the end, so the leaf is left full for them.
+			int half = at == leaf.length ? LEAF : result.length / 2;
+			return new Object[] { Arrays.copyOfRange(result, 0, half), Arrays.copyOfRange(result, half, result.length) };
+		}
+		Inner inner = (Inner) node;
+		int child = Math.max(countBefore(inner._firsts, inner._firsts.length, bound) - 1, 0);
+		Object[] added = add(inner._children[child], value, bound);
+		Object[] children = new Object[inner._children.length + added.length - 1];
+		System.arraycopy(inner._children, 0, children, 0, child);
+		System.arraycopy(added, 0, children, child, added.length);
+		System.arraycopy(inner._children, child + 1, children, child + added.length, inner._children.length - child - 1);
+		if (children.length <= FANOUT) {
+			return new Object[] { Inner.of(children) };
+		}
+		int half = child == inner._children.length - 1 ? FANOUT : children.length / 2;
+		return new Object[] { Inner.of(Arrays.copyOfRange(children, 0, half)),
+				Inner.of(Arrays.copyOfRange(children, half, children.length)) };
+	}
+
+	/**
+	 * Remove an int which is under a node. A child left small is merged with a neighbour if they fit in one.
+	 * @return The new node, or null if it is left empty.
+	 */
+	private static Object remove(Object node, final int value, final Order order) {
+		if (node instanceof int[]) {
+			int[] leaf = (int[]) node;
+			if (leaf.length == 1) {
+				return null;
+			}
+			int at = countBefore(leaf, leaf.length, before(value, order));
+			int[] result = new int[leaf.length - 1];
+			System.arraycopy(leaf, 0, result, 0, at);
+			System.arraycopy(leaf, at + 1, result, at, result.length - at);
+			return result;
+		}
+		Inner inner = (Inner) node;
+		//The int is in the last child whose first int is not after it.
+		Bound upTo = new Bound() {
+			@Override
+			boolean isBefore(int other) {
+				return order.compare(other, value) <= 0;
+			}
+		};
+		int child = countBefore(inner._firsts, inner._firsts.length, upTo) - 1;
+		Object removed = remove(inner._children[child], value, order);
+		Object[] children;
+		if (removed == null) {
+			if (inner._children.length == 1) {
+				return null;
+			}
+			children = new Object[inner._children.length - 1];
+			System.arraycopy(inner._children, 0, children, 0, child);
+			System.arraycopy(inner._children, child + 1, children, child, children.length - child);
+			return Inner.of(children);
+		}
+		children = inner._children.clone();
+		children[child] = removed;
+		int neighbour = child + 1 < children.length ? child + 1 : child - 1;
+		if (neighbour >= 0 && width(removed) + width(children[neighbour]) <= (removed instanceof int[] ? LEAF : FANOUT) / 2) {
+			int left = Math.min(child, neighbour);
+			Object[] merged = new Object[children.length - 1];
+			System.arraycopy(children, 0, merged, 0, left);
+			merged[left] = join(children[left], children[left + 1]);
+			System.arraycopy(children, left + 2, merged, left + 1, children.length - left - 2);
+			children = merged;
+		}
+		return Inner.of(children);
+	}
+
+	/**
+	 * @return The number of ints of a leaf or children of an inner node.
+	 */
+	private static int width(Object node) {
+		return node instanceof int[] ? ((int[]) node).length : ((Inner) node)._children.length;
+	}
+
+	/**
+	 * @return One node with the ints or children of two nodes next to each other on the same level.
+	 */
+	private static Object join(Object left, Object right) {
+		if (left instanceof int[]) {
+			int[] leftLeaf = (int[]) left;
+			int[] rightLeaf = (int[]) right;
+			int[] result = Arrays.copyOf(leftLeaf, leftLeaf.length + rightLeaf.length);
+			System.arraycopy(rightLeaf, 0, result, leftLeaf.length, rightLeaf.length);
+			return result;
+		}
+		Object[] leftChildren = ((Inner) left)._children;
+		Object[] rightChildren = ((Inner) right)._children;
+		Object[] children = Arrays.copyOf(leftChildren, leftChildren.length + rightChildren.length);
+		System.arraycopy(rightChildren, 0, children, leftChildren.length, rightChildren.length);
+		return Inner.of(children);
+	}
+
+	/**
+	 * This Inner class is an inner node: its children, the first int under each,
+	 * and the number of ints under the children up to the end of each.
+	 */
+	private static final class Inner {
+		private final Object[] _children;
+		private final int[] _firsts;
+		private final int[] _ends;
+
+		private Inner(Object[] children, int[] firsts, int[] ends) {
+			_children = children;
+			_firsts = firsts;
+			_ends = ends;
+		}
+
+		/**
+		 * @param children The children, none of them empty.
+		 * @return The inner node.
+		 */
+		static Inner of(Object[] children) {
+			int[] firsts = new int[children.length];
+			int[] ends = new int[children.length];
+			int end = 0;
+			for (int i = 0; i < children.length; i++) {
+				if (children[i] instanceof int[]) {
+					int[] leaf = (int[]) children[i];
+					firsts[i] = leaf[0];
+					end += leaf.length;
+				} else {
+					Inner inner = (Inner) children[i];
+					firsts[i] = inner._firsts[0];
+					end += inner._ends[inner._ends.length - 1];
+				}
+				ends[i] = end;
+			}
+			return new Inner(children, firsts, ends);
+		}
+
+		/**
+		 * @return The number of ints under the children before a child.
+		 */
+		int start(int child) {
+			return child == 0 ? 0 : _ends[child - 1];
+		}
+
+		/**
+		 * @param index An index under the node.
+		 * @return The child with the int at the index.
+		 */
+		int childAt(int index) {
+			int low = 0;
+			int high = _ends.length - 1;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (_ends[middle] <= index) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+}
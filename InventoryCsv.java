@@ -0,0 +1,237 @@
+package inventoryman;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This InventoryCsv class loads items from and exports items to delimited text files, either
+ * comma separated (CSV) or tab separated (TSV). Each line is one item with the columns:
+ * type ("book" or "music"), creator, title, publication year or release date, acquisition date,
+ * owner, cost, format and publisher (books only). Values containing the separator, a double quote or
+ * a line break are put in double quotes, with double quotes inside doubled.
+ * Files are read and written line by line, so their size is not limited by memory.
+ *
+ */
+public final class InventoryCsv {
+	
+	public static final char CSV = ',';
+	public static final char TSV = '\t';
+	
+	private static final String BOOK = "book";
+	private static final String MUSIC = "music";
+	private static final int BOOK_COLUMNS = 9;
+	private static final int MUSIC_COLUMNS = 8;
+	
+	//Lines are added to the inventory in batches of this many items.
+	private static final int BATCH_SIZE = 8192;
+	
+	private InventoryCsv() {
+	}
+	
+	/**
+	 * Add the items of a file to the inventory.
+	 * @param file The file to read.
+	 * @param separator The separator between values, CSV or TSV.
+	 * @param inventoryMan The inventory to add to.
+	 * @param errors Where to write a line for each item which could not be added, starting with
+	 * the line number of the item, or null to ignore them.
+	 * @return The number of items added.
+	 * @throws IOException If the file can not be read or errors can not be written.
+	 */
+	public static long load(Path file, char separator, InventoryMan inventoryMan, Appendable errors) throws IOException {
+		long added = 0;
+		long lineNumber = 0;
+		List<ItemRecord> batch = new ArrayList<ItemRecord>(BATCH_SIZE);
+		List<Long> batchLines = new ArrayList<Long>(BATCH_SIZE);
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			List<String> values = new ArrayList<String>(BOOK_COLUMNS);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				long firstLine = lineNumber;
+				if (line.isEmpty()) {
+					continue;
+				}
+				
+				//A quoted value may go on over the next lines.
+				while (!split(line, separator, values)) {
+					String next = reader.readLine();
+					if (next == null) {
+						break;
+					}
+					lineNumber++;
+					line = line + "\n" + next;
+				}
+				ItemRecord record = toRecord(values);
+				if (record == null) {
+					report(errors, firstLine, "ERROR" + "Wrong type or number of values!");
+					continue;
+				}
+				batch.add(record);
+				batchLines.add(firstLine);
+				if (batch.size() == BATCH_SIZE) {
+					added += addBatch(inventoryMan, batch, batchLines, errors);
+				}
+			}
+		}
+		added += addBatch(inventoryMan, batch, batchLines, errors);
+		return added;
+	}
+	
+	/**
+	 * Write every item of the inventory to a file, in the order the items were added.
+	 * @param inventoryMan The inventory to write.
+	 * @param file The file to write, replaced if it exists.
+	 * @param separator The separator between values, CSV or TSV.
+	 * @return The number of items written.
+	 * @throws IOException If the file can not be written.
+	 */
+	public static long export(InventoryMan inventoryMan, Path file, char separator) throws IOException {
+		long written = 0;
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			StringBuilder line = new StringBuilder();
+			Iterator<ItemRecord> records = inventoryMan.iterateRecords();
+			while (records.hasNext()) {
+				line.setLength(0);
+				appendLine(line, records.next(), separator);
+				writer.append(line);
+				written++;
+			}
+		}
+		return written;
+	}
+	
+	/**
+	 * Add a batch of records to the inventory and empty the batch.
+	 * @return The number of records added.
+	 */
+	private static long addBatch(InventoryMan inventoryMan, List<ItemRecord> batch, List<Long> batchLines,
+			Appendable errors) throws IOException {
+		long added = 0;
+		if (batch.isEmpty()) {
+			return added;
+		}
+		List<String> results = inventoryMan.addAll(batch);
+		for (int i = 0; i < results.size(); i++) {
+			if (results.get(i).startsWith("ERROR")) {
+				report(errors, batchLines.get(i), results.get(i));
+			}else {
+				added++;
+			}
+		}
+		batch.clear();
+		batchLines.clear();
+		return added;
+	}
+	
+	/**
+	 * Write a line about an item which could not be added.
+	 */
+	private static void report(Appendable errors, long lineNumber, String error) throws IOException {
+		if (errors != null) {
+			errors.append(Long.toString(lineNumber)).append(": ").append(error).append(System.lineSeparator());
+		}
+	}
+	
+	/**
+	 * Create the record of an item from the values of a line.
+	 * @return The record, or null if the type or the number of values is wrong.
+	 */
+	private static ItemRecord toRecord(List<String> values) {
+		String type = values.get(0);
+		if (BOOK.equals(type) && values.size() == BOOK_COLUMNS) {
+			return ItemRecord.book(values.get(1), values.get(2), values.get(3), values.get(8),
+					values.get(4), values.get(5), values.get(6), values.get(7));
+		}
+		if (MUSIC.equals(type) && values.size() == MUSIC_COLUMNS) {
+			return ItemRecord.music(values.get(1), values.get(2), values.get(3),
+					values.get(4), values.get(5), values.get(6), values.get(7));
+		}
+		return null;
+	}
+	
+	/**
+	 * Split a line into its values, removing the quotes of quoted values.
+	 * @param line The line.
+	 * @param separator The separator between values.
+	 * @param values Emptied, then filled with the values of the line.
+	 * @return false if the line ends inside a quoted value.
+	 */
+	static boolean split(String line, char separator, List<String> values) {
+		values.clear();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					value.append(c);
+				}else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					value.append('"');
+					i++;
+				}else {
+					quoted = false;
+				}
+			}else if (c == '"') {
+				quoted = true;
+			}else if (c == separator) {
+				values.add(value.toString());
+				value.setLength(0);
+			}else {
+				value.append(c);
+			}
+		}
+		values.add(value.toString());
+		return !quoted;
+	}
+	
+	/**
+	 * Append the line of an item, ending with a line break.
+	 */
+	static void appendLine(StringBuilder line, ItemRecord record, char separator) {
+		boolean book = record.getType() == ItemType.BOOK;
+		line.append(book ? BOOK : MUSIC);
+		appendValue(line.append(separator), record.getCreator(), separator);
+		appendValue(line.append(separator), record.getTitle(), separator);
+		appendValue(line.append(separator), record.getPublicationYear(), separator);
+		appendValue(line.append(separator), record.getAcquisitionDateStr(), separator);
+		appendValue(line.append(separator), record.getOwner(), separator);
+		appendValue(line.append(separator), record.getCostStr(), separator);
+		appendValue(line.append(separator), record.getFormatStr(), separator);
+		if (book) {
+			appendValue(line.append(separator), record.getPublisher(), separator);
+		}
+		line.append('\n');
+	}
+	
+	/**
+	 * Append a value, in quotes if it contains the separator, a double quote or a line break.
+	 */
+	private static void appendValue(StringBuilder line, String value, char separator) {
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == separator || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			line.append(value);
+			return;
+		}
+		line.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				line.append('"');
+			}
+			line.append(c);
+		}
+		line.append('"');
+	}
+}
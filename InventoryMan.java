@@ -1,6 +1,8 @@
 package inventoryman;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.SortedMap;
 /**
  * Manage the inventory of music and books for a flat, known as "items".
  * Each item has a "creator" (author for books and artist for music), a "title",
@@ -52,7 +54,50 @@ public interface InventoryMan {
 	public String addMusic(String artist, String title, String releaseDateStr, String acquisitionDateStr, 
 			String owner, String costStr, String formatStr);
 
-	
+	/**
+	 * Add many items to the inventory at once. This gives the same result as adding the
+	 * items one at a time in the order of the records, but is much faster for many items.
+	 * @param records The items to add.
+	 * @return A list with the result of adding each record, in the order of the records, either "Success"
+	 * or a string beginning with "ERROR" and the rest of the string providing some details as to what went wrong.
+	 * @see #addBook(String, String, String, String, String, String, String, String)
+	 * @see #addMusic(String, String, String, String, String, String, String)
+	 */
+	public List<String> addAll(List<ItemRecord> records);
+
+	/**
+	 * Remove the item with the specified creator, title and format from the inventory.
+	 * @param creator The artist or author of the item
+	 * @param title The title of the item
+	 * @param formatStr The format of the item
+	 * @return A string, either "Success" if there are no problems or a string beginning with "ERROR" and the rest of the string
+	 * providing some details as to what went wrong.
+	 */
+	public String removeItem(String creator, String title, String formatStr);
+
+	/**
+	 * Give the item with the specified creator, title and format to another owner.
+	 * @param creator The artist or author of the item
+	 * @param title The title of the item
+	 * @param formatStr The format of the item
+	 * @param newOwner The new owner of the item
+	 * @return A string, either "Success" if there are no problems or a string beginning with "ERROR" and the rest of the string
+	 * providing some details as to what went wrong.
+	 */
+	public String transferOwner(String creator, String title, String formatStr, String newOwner);
+
+	/**
+	 * Change the cost of the item with the specified creator, title and format.
+	 * @param creator The artist or author of the item
+	 * @param title The title of the item
+	 * @param formatStr The format of the item
+	 * @param costStr The new cost of the item (format "$" dollars "." cents, where dollars is a sequence of 1 or more digits and
+	 * cents is always 2 digits)
+	 * @return A string, either "Success" if there are no problems or a string beginning with "ERROR" and the rest of the string
+	 * providing some details as to what went wrong.
+	 */
+	public String updateCost(String creator, String title, String formatStr, String costStr);
+
 	/**
 	 * <b>(1 mark)</b> Provide a string showing the details of the item with the specified details.
 	 * The format of the string depends on whether it is a book or music. The formats are:<br>
@@ -78,6 +123,28 @@ public interface InventoryMan {
 	 * order.
 	 */
 	public List<String> getAll(String order);
+	
+	/**
+	 * Return one page of all items in the specified order, as for {@link #getAll(String)}, starting
+	 * after the item of the cursor. Only the items of the page are read, and the cursor stays valid
+	 * while other items are added or removed, even the item of the cursor, so paging through the
+	 * inventory never skips or repeats an item which is there all along.
+	 * @param order The order to list the items
+	 * @param afterCursor The cursor of the previous page, or null for the first page.
+	 * @param limit The most items on the page, at least 1.
+	 * @return The page, with a cursor for the next page, or an empty page with an error if the string
+	 * is not a cursor or the limit is less than 1.
+	 */
+	public Page getAll(String order, String afterCursor, int limit);
+	
+	/**
+	 * Append all items in the specified order, as {@link #getAll(String)} lists them, to a buffer
+	 * of the caller, each followed by a new line. No string is made for each item, so listing into
+	 * the same buffer again and again makes next to no garbage.
+	 * @param order The order to list the items
+	 * @param out Where to append the items.
+	 */
+	public void appendAll(String order, StringBuilder out);
 
 	/**
 	 * <b>(2 marks)</b> Return a list of all items acquired in the specified year in order of 
@@ -89,6 +156,17 @@ public interface InventoryMan {
 	 */
 	public List<String> getItemsAcquiredInYear(String year);
 
+	/**
+	 * Return a list of all items acquired between the two dates, including both of them, in order of
+	 * date of acquisition as a list of strings, where each string provides
+	 * the details of the item using the same format
+	 * as used by {@link #getItemToDisplay(String, String, String)}.
+	 * @param fromDateStr The first date of acquisition to include (ISO8601 format)
+	 * @param toDateStr The last date of acquisition to include (ISO8601 format)
+	 * @return The list of items acquired between the dates in order of date of acquisition.
+	 */
+	public List<String> getItemsAcquiredBetween(String fromDateStr, String toDateStr);
+
 	/**
 	 * <b>(2 marks)</b> Return a list of all creators of items in the inventory in alphabetical
 	 * order. If there are multiple items with the same creator then that creator 
@@ -97,6 +175,56 @@ public interface InventoryMan {
 	 */
 	public List<String> getCreators();
 	
+	/**
+	 * Return a list of the creators of items in the inventory whose names start with the
+	 * specified prefix, in alphabetical order, each only once, as for {@link #getCreators()}.
+	 * @param prefix The start of the names of the creators, the empty string for all creators.
+	 * @return The list of creators starting with the prefix in alphabetical order.
+	 */
+	public List<String> getCreatorsStartingWith(String prefix);
+	
+	/**
+	 * Return a list of all items of the specified creator in the order they were added, where each
+	 * string provides the details of the item using the same format as used by
+	 * {@link #getItemToDisplay(String, String, String)}.
+	 * @param creator The artist or author of the items.
+	 * @return The list of the items of the creator, empty if there are none.
+	 */
+	public List<String> getItemsByCreator(String creator);
+	
+	/**
+	 * Return the number of items and the total, lowest and highest cost of the items of each group,
+	 * the items grouped by owner, by format, by year of acquisition (four digits, so years sort in order)
+	 * or by type ("Book" or "Music").
+	 * The summaries are kept up to date as items are added, removed and changed, so this costs the
+	 * number of groups rather than the number of items.
+	 * @param grouping How to group the items, either "Owner", "Format", "Year" or "Type".
+	 * @return The summary of each group, in alphabetical order of the groups, or no groups for other groupings.
+	 */
+	public SortedMap<String, CostSummary> getCostSummary(String grouping);
+	
+	/**
+	 * Find the items matching a query, in the order of the query and no more than its limit. The items
+	 * are looked for in whichever index holds the fewest items which can match, such as the items of the
+	 * creator, of the owner or acquired in the range of dates, and only the first items in the order are kept.
+	 * @param query The filters, order and limit of the items to find.
+	 * @return A list of the strings of the items found, in the format of
+	 * {@link #getItemToDisplay(String, String, String)}.
+	 */
+	public List<String> find(ItemQuery query);
+	
+	/**
+	 * Search the titles, creators and publishers of the items for words. Case does not matter, and
+	 * each word of the query may be the start of a word, so "zep" finds "Led Zeppelin". An item must
+	 * match every word of the query. Items which have the words whole come first, then the items
+	 * added first.
+	 * @param query The words to search for.
+	 * @param limit The most items to return.
+	 * @return A list of the strings of the best matching items, in the format of
+	 * {@link #getItemToDisplay(String, String, String)}.
+	 */
+	public List<String> search(String query, int limit);
+	
 	/**
 	 * <b>(2 marks)</b> Return a report of the items in the inventory. The report is a list of strings
 	 * where the <em>first element</em> is the name of the flat, and the remaining elements
@@ -117,5 +245,49 @@ public interface InventoryMan {
 	 * @return A list of items with the format and order specified. 
 	 */
 	public List<String> getFlatReport();
+	
+	/**
+	 * Iterate over all items in the specified order, as {@link #getAll(String)} lists them. Each string
+	 * is only made when the iterator reaches it, so the items can be written out without holding them all.
+	 * @param order The order to list the items
+	 * @return An iterator over the strings of the items.
+	 */
+	public Iterator<String> iterateAll(String order);
+	
+	/**
+	 * Iterate over the items acquired in the specified year, as {@link #getItemsAcquiredInYear(String)}
+	 * lists them, making each string when the iterator reaches it.
+	 * @param year The year in which the item should have been acquired
+	 * @return An iterator over the strings of the items.
+	 */
+	public Iterator<String> iterateItemsAcquiredInYear(String year);
+	
+	/**
+	 * Iterate over the items acquired between the two dates, as
+	 * {@link #getItemsAcquiredBetween(String, String)} lists them, making each string when the iterator reaches it.
+	 * @param fromDateStr The first date of acquisition to include (ISO8601 format)
+	 * @param toDateStr The last date of acquisition to include (ISO8601 format)
+	 * @return An iterator over the strings of the items.
+	 */
+	public Iterator<String> iterateItemsAcquiredBetween(String fromDateStr, String toDateStr);
+	
+	/**
+	 * Iterate over the creators, as {@link #getCreators()} lists them.
+	 * @return An iterator over the creators in alphabetical order.
+	 */
+	public Iterator<String> iterateCreators();
+	
+	/**
+	 * Iterate over the lines of the report, as {@link #getFlatReport()} lists them, the name of the flat first.
+	 * @return An iterator over the lines of the report.
+	 */
+	public Iterator<String> iterateFlatReport();
+	
+	/**
+	 * Iterate over the values of all items in the order they were added, as records which can be
+	 * added to another inventory, making each record when the iterator reaches it.
+	 * @return An iterator over the records of the items.
+	 */
+	public Iterator<ItemRecord> iterateRecords();
 
 }
@@ -1,29 +1,161 @@
 package inventoryman;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.List;
-import java.util.Set;
 import java.util.Comparator;
-import java.util.LinkedHashSet;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This InventoryManImpl provides the implementation of all methods
  * provided in the API InventoryMan. 
- * Including: addBook, addMusic, getItemToDisplay, getAll, getItemsAcquiredInYear, 
- * getCreators, and getFlatReport.
+ * Including: addBook, addMusic, addAll, removeItem, transferOwner, updateCost, getItemToDisplay,
+ * getAll (also by page), getItemsAcquiredInYear, getItemsAcquiredBetween, getCreators,
+ * getCreatorsStartingWith, getItemsByCreator, getCostSummary, find, search, and getFlatReport.
+ * Removing or changing an item only updates the entries of that item in each index.
+ * It is safe to share between threads: queries never lock and never change the inventory,
+ * so many readers can run alongside the writers.
+ * An inventory created with {@link #open(String, Path, FsyncPolicy)} keeps its items in a
+ * write-ahead log, so they are not lost when the program stops. A change is only reported a success
+ * once its entry is committed to the log; a change whose entry can not be committed is undone, with
+ * every later change, so the inventory never holds what the log does not. Queries may see a change
+ * while its entry is being committed.
  * @author chenh
  *
  */
-public class InventoryManImpl implements InventoryMan {
-	private List<Item> _ItemList = new ArrayList<Item>();
-	private String _flatName;
+public class InventoryManImpl implements InventoryMan, Closeable {
+	//All indexes are concurrent collections, so readers never lock and never see a half-sorted list.
+	//Writers are serialised by _writeLock so an item is checked and added to every index at once.
+	private final ConcurrentNavigableMap<Integer, Item> _SequenceIndex = new ConcurrentSkipListMap<Integer, Item>();
+	private final Map<ItemKey, Item> _ItemIndex = new ConcurrentHashMap<ItemKey, Item>();
+	//Items are never changed in place. The ordered indexes map an item to its latest copy, which is sorted
+	//the same since no order is by owner or cost, so a changed copy replaces it without leaving the index.
+	private final Map<State, ConcurrentNavigableMap<Item, Item>> _OrderIndex = new EnumMap<State, ConcurrentNavigableMap<Item, Item>>(State.class);
+	private final ConcurrentNavigableMap<Integer, ConcurrentNavigableMap<Item, Item>> _YearIndex = new ConcurrentSkipListMap<Integer, ConcurrentNavigableMap<Item, Item>>();
+	//The segments of the owners are published as a whole, so a report reads them all as they were at one moment.
+	private volatile SortedMap<String, OwnerSegment> _OwnerIndex = Collections.unmodifiableSortedMap(new TreeMap<String, OwnerSegment>());
+	private final CreatorIndex _CreatorIndex = new CreatorIndex();
+	private final StringPool _Strings = new StringPool();
+	private final SearchIndex _SearchIndex = new SearchIndex();
+	private final CostAggregates _Aggregates = new CostAggregates();
+	private final Object _writeLock = new Object();
+	private int _nextSequence;
+	private final String _flatName;
+	private final boolean _cacheStrings;
+	
+	//Every item added or changed is appended to the log, if there is one. Guarded by _writeLock.
+	private WriteAheadLog _log;
+	private long _logTicket;
+	private Path _snapshotFile;
+	//The changes whose entries may not yet be committed, oldest first, to undo if the log fails. Guarded by _writeLock.
+	private final ArrayDeque<Undo> _uncommitted = new ArrayDeque<Undo>();
 	
 	/**
 	 * Create an InventoryManImpl object for the specified flat.
 	 * @param flatName The name of the flat whose inventory items are being managed.
 	 */
 	public InventoryManImpl(String flatName) {
+		this(flatName, false);
+	}
+	
+	/**
+	 * Create an InventoryManImpl object for the specified flat, which may keep the string of each
+	 * item once made, so listing the same items again makes no new strings. That costs the memory
+	 * of the strings of all items listed.
+	 * @param flatName The name of the flat whose inventory items are being managed.
+	 * @param cacheStrings Whether to keep the string of each item.
+	 */
+	public InventoryManImpl(String flatName, boolean cacheStrings) {
 		_flatName = flatName;
+		_cacheStrings = cacheStrings;
+		
+		//Keep one ordered index for each order, so listing never needs to sort.
+		//The order of the report is kept by the segments of the owners instead.
+		for (State state : State.values()) {
+			if (state != State.OWNER) {
+				_OrderIndex.put(state, new ConcurrentSkipListMap<Item, Item>(Item.sorting(state)));
+			}
+		}
+	}
+
+	/**
+	 * Create an InventoryManImpl object for the specified flat which appends every item added
+	 * to a write-ahead log. The items already in the log are added first.
+	 * @param flatName The name of the flat whose inventory items are being managed.
+	 * @param logFile The file of the log, created if it does not exist.
+	 * @param policy When items added are forced to disk.
+	 * @return The inventory with the items of the log.
+	 * @throws IOException If the log can not be read or written.
+	 */
+	public static InventoryManImpl open(String flatName, Path logFile, FsyncPolicy policy) throws IOException {
+		return open(flatName, null, logFile, policy);
+	}
+	
+	/**
+	 * Create an InventoryManImpl object for the specified flat which is kept in a snapshot and a
+	 * write-ahead log of the changes since the snapshot. The items of the snapshot are added first,
+	 * if it exists, then the log is replayed. Writing a snapshot to the same file empties the log.
+	 * @param flatName The name of the flat whose inventory items are being managed.
+	 * @param snapshotFile The file of the snapshot, or null to keep every change in the log.
+	 * @param logFile The file of the log, created if it does not exist.
+	 * @param policy When items added are forced to disk.
+	 * @return The inventory with the items of the snapshot and the log.
+	 * @throws IOException If the snapshot or the log can not be read or written.
+	 * @see #writeSnapshot(Path)
+	 */
+	public static InventoryManImpl open(String flatName, Path snapshotFile, Path logFile, FsyncPolicy policy)
+			throws IOException {
+		InventoryManImpl inventoryMan = new InventoryManImpl(flatName);
+		if (snapshotFile != null && Files.exists(snapshotFile)) {
+			InventorySnapshot.open(snapshotFile).addTo(inventoryMan);
+		}
+		WriteAheadLog log = WriteAheadLog.open(logFile, policy, inventoryMan);
+		synchronized (inventoryMan._writeLock) {
+			inventoryMan._log = log;
+			inventoryMan._snapshotFile = snapshotFile;
+		}
+		return inventoryMan;
+	}
+	
+	/**
+	 * @return The number of entries of the write-ahead log which the inventory rejected when it was
+	 * opened, 0 if there is no log. Items already in the snapshot are not counted, so this is 0 unless
+	 * the snapshot and the log do not belong together.
+	 */
+	public int failedReplays() {
+		synchronized (_writeLock) {
+			return _log == null ? 0 : _log.failedReplays();
+		}
+	}
+	
+	/**
+	 * Close the write-ahead log, if there is one, after forcing every item added to disk.
+	 * @throws IOException If the log can not be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (_writeLock) {
+			if (_log != null) {
+				_log.close();
+			}
+		}
 	}
 
 	/**
@@ -44,20 +176,24 @@ public class InventoryManImpl implements InventoryMan {
 	public String addBook(String author, String title, String publicationYear, String publisher,
 			String acquisitionDateStr, String owner, String costStr, String formatStr) {
 		
-		Item book = null;
-		
-		//Catch checked exceptions, including self-created custom exceptions and general exceptions.
-		try {
-			book = new Book(author, title, publicationYear, acquisitionDateStr, owner, costStr, formatStr, publisher);
-		}catch (FormatException e1) {
-			return "ERROR" + "Date is wrong!";
-		}catch (CostException e2) {
-			return "ERROR" + "Cost is wrong!";
-		}catch (Exception e) {
-			return "ERROR" + "Date or Cost is wrong!";
-		}
-		_ItemList.add(book);
-		return "Success";
+		//Check the values before creating the book, so bad values never cost an exception.
+		if (!ItemKey.isKey(author, title, formatStr)) {
+			return "ERROR" + ValidationResult.BAD_KEY.message();
+		}
+		int acquisitionDay = ItemValidator.toEpochDay(acquisitionDateStr);
+		if (acquisitionDay == ItemValidator.INVALID_DAY) {
+			return "ERROR" + ValidationResult.BAD_DATE.message();
+		}
+		long costCents = ItemValidator.toCents(costStr);
+		if (costCents == ItemValidator.INVALID_COST) {
+			return "ERROR" + ValidationResult.BAD_COST.message();
+		}
+		if (owner == null) {
+			return "ERROR" + ValidationResult.BAD_OWNER.message();
+		}
+		Item book = new Book(author, title, publicationYear, acquisitionDay, owner,
+				costStr, costCents, formatStr, publisher);
+		return addItem(book);
 	}
 	/**
 	 * Add an item representing music to the inventory with the specified values.  
@@ -75,19 +211,179 @@ public class InventoryManImpl implements InventoryMan {
 	
 	public String addMusic(String artist, String title, String releaseDateStr, String acquisitionDateStr, 
 			String owner, String costStr, String formatStr) {
-		Item music = null;
+		//Check the values before creating the music, so bad values never cost an exception.
+		if (!ItemKey.isKey(artist, title, formatStr)) {
+			return "ERROR" + ValidationResult.BAD_KEY.message();
+		}
+		int acquisitionDay = ItemValidator.toEpochDay(acquisitionDateStr);
+		if (acquisitionDay == ItemValidator.INVALID_DAY) {
+			return "ERROR" + ValidationResult.BAD_DATE.message();
+		}
+		long costCents = ItemValidator.toCents(costStr);
+		if (costCents == ItemValidator.INVALID_COST) {
+			return "ERROR" + ValidationResult.BAD_COST.message();
+		}
+		if (owner == null) {
+			return "ERROR" + ValidationResult.BAD_OWNER.message();
+		}
+		Item music = new Music(artist, title, releaseDateStr, acquisitionDay, owner,
+				costStr, costCents, formatStr);
+		return addItem(music);
+	}
+	
+	/**
+	 * Remove the item with the specified creator, title and format from the inventory, taking it
+	 * out of each index by its place in the index.
+	 * @param creator The artist or author of the item
+	 * @param title The title of the item
+	 * @param formatStr The format of the item
+	 * @return A string, either "Success" if there are no problems or a string beginning with "ERROR" and the rest of the string
+	 * providing some details as to what went wrong.
+	 */
+	
+	public String removeItem(String creator, String title, String formatStr) {
+		if (!ItemKey.isKey(creator, title, formatStr)) {
+			return "ERROR" + "Item does not exist!";
+		}
+		ItemKey key = new ItemKey(creator, title, formatStr);
+		long ticket;
+		synchronized (_writeLock) {
+			Item CurrentItem = _ItemIndex.get(key);
+			if (CurrentItem == null) {
+				return "ERROR" + "Item does not exist!";
+			}
+			if (_log != null) {
+				try {
+					_logTicket = _log.appendRemove(key);
+				} catch (IOException e) {
+					return "ERROR" + "Could not write the log!";
+				}
+				final Item removed = CurrentItem;
+				uncommitted(new Undo(_logTicket) {
+					@Override
+					void undo() {
+						_SequenceIndex.put(removed._sequence, removed);
+						_ItemIndex.put(removed.key(), removed);
+						index(removed);
+					}
+				});
+			}
+			unindex(CurrentItem);
+			ticket = _logTicket;
+		}
+		String error = commitLog(ticket);
+		if (error != null) {
+			return error;
+		}
+		return "Success";
+	}
+	
+	/**
+	 * Give the item with the specified creator, title and format to another owner. A copy of the item
+	 * with the new owner replaces it in every index, and only the segments of the old and the new owner
+	 * are taken apart, since no other index is sorted by owner.
+	 * @param creator The artist or author of the item
+	 * @param title The title of the item
+	 * @param formatStr The format of the item
+	 * @param newOwner The new owner of the item
+	 * @return A string, either "Success" if there are no problems or a string beginning with "ERROR" and the rest of the string
+	 * providing some details as to what went wrong.
+	 */
+	
+	public String transferOwner(String creator, String title, String formatStr, String newOwner) {
 		
-		//Catch checked exceptions, including self-created custom exceptions and general exceptions.
-		try {
-			music = new Music(artist, title, releaseDateStr, acquisitionDateStr, owner, costStr, formatStr);
-		}catch (FormatException e1) {
-			return "ERROR" + "Date is wrong!";
-		}catch (CostException e2) {
-			return "ERROR" + "Cost is wrong!";
-		}catch (Exception e) {
-			return "ERROR" + "Date or Cost is wrong!";
-		}
-			_ItemList.add(music);
+		//Check the owner before anything is logged or taken out of an index.
+		if (!ItemValidator.isOwner(newOwner)) {
+			return "ERROR" + ValidationResult.BAD_OWNER.message();
+		}
+		if (!ItemKey.isKey(creator, title, formatStr)) {
+			return "ERROR" + "Item does not exist!";
+		}
+		ItemKey key = new ItemKey(creator, title, formatStr);
+		long ticket;
+		synchronized (_writeLock) {
+			Item CurrentItem = _ItemIndex.get(key);
+			if (CurrentItem == null) {
+				return "ERROR" + "Item does not exist!";
+			}
+			if (_log != null) {
+				try {
+					_logTicket = _log.appendTransfer(key, newOwner);
+				} catch (IOException e) {
+					return "ERROR" + "Could not write the log!";
+				}
+			}
+			final Item changed = CurrentItem.withOwner(_Strings.shared(newOwner));
+			if (_log != null) {
+				final Item original = CurrentItem;
+				uncommitted(new Undo(_logTicket) {
+					@Override
+					void undo() {
+						replace(changed, original);
+					}
+				});
+			}
+			replace(CurrentItem, changed);
+			ticket = _logTicket;
+		}
+		String error = commitLog(ticket);
+		if (error != null) {
+			return error;
+		}
+		return "Success";
+	}
+	
+	/**
+	 * Change the cost of the item with the specified creator, title and format. A copy of the item
+	 * with the new cost replaces it in every index, where it is sorted in the same place.
+	 * @param creator The artist or author of the item
+	 * @param title The title of the item
+	 * @param formatStr The format of the item
+	 * @param costStr The new cost of the item (format "$" dollars "." cents, where dollars is a sequence of 1 or more digits and
+	 * cents is always 2 digits)
+	 * @return A string, either "Success" if there are no problems or a string beginning with "ERROR" and the rest of the string
+	 * providing some details as to what went wrong.
+	 */
+	
+	public String updateCost(String creator, String title, String formatStr, String costStr) {
+		long costCents = ItemValidator.toCents(costStr);
+		if (costCents == ItemValidator.INVALID_COST) {
+			return "ERROR" + ValidationResult.BAD_COST.message();
+		}
+		if (!ItemKey.isKey(creator, title, formatStr)) {
+			return "ERROR" + "Item does not exist!";
+		}
+		ItemKey key = new ItemKey(creator, title, formatStr);
+		long ticket;
+		synchronized (_writeLock) {
+			Item CurrentItem = _ItemIndex.get(key);
+			if (CurrentItem == null) {
+				return "ERROR" + "Item does not exist!";
+			}
+			if (_log != null) {
+				try {
+					_logTicket = _log.appendCost(key, costStr);
+				} catch (IOException e) {
+					return "ERROR" + "Could not write the log!";
+				}
+			}
+			final Item changed = CurrentItem.withCost(costStr, costCents);
+			if (_log != null) {
+				final Item original = CurrentItem;
+				uncommitted(new Undo(_logTicket) {
+					@Override
+					void undo() {
+						replace(changed, original);
+					}
+				});
+			}
+			replace(CurrentItem, changed);
+			ticket = _logTicket;
+		}
+		String error = commitLog(ticket);
+		if (error != null) {
+			return error;
+		}
 		return "Success";
 	}
 	
@@ -104,17 +400,14 @@ public class InventoryManImpl implements InventoryMan {
 	 */
 	
 	public String getItemToDisplay(String creator, String title, String formatStr) {
-		for (int i = 0; i< _ItemList.size(); i++) {
-			Item CurrentItem = _ItemList.get(i);
-			if (formatStr.equals(CurrentItem._formatStr) && CurrentItem._creator.equals(creator) && CurrentItem._title.equals(title)) {
-				if (CurrentItem instanceof Book) {
-					return ((Book)CurrentItem).asString();
-				}else if (CurrentItem instanceof Music) {
-					return ((Music)CurrentItem).asString();
-				}
-			}
+		if (!ItemKey.isKey(creator, title, formatStr)) {
+			return "ERROR";
+		}
+		Item CurrentItem = _ItemIndex.get(new ItemKey(creator, title, formatStr));
+		if (CurrentItem == null) {
+			return "ERROR";
 		}
-		return "ERROR";
+		return display(CurrentItem);
 	}
 	
 	/**
@@ -130,26 +423,50 @@ public class InventoryManImpl implements InventoryMan {
 	 */
 	
 	public List<String> getAll(String order){
+		return LineIterator.toList(iterateAll(order));
+	}
+	
+	/**
+	 * Return one page of all items in the specified order, starting after the item of the cursor.
+	 * The ordered index is entered just after the place of the cursor, so the cost is the size of the page.
+	 * @param order The order to list the items
+	 * @param afterCursor The cursor of the previous page, or null for the first page.
+	 * @param limit The most items on the page, at least 1.
+	 * @return The page, with a cursor for the next page, or an empty page with an error if the string is not a cursor
+	 * or the limit is less than 1.
+	 */
+	
+	public Page getAll(String order, String afterCursor, int limit){
+		if (limit <= 0) {
+			return new Page("ERROR" + "The limit of a page must be at least 1!");
+		}
+		State state = State.fromOrder(order);
+		Iterable<Item> items;
+		if (afterCursor == null) {
+			items = state == null ? _SequenceIndex.values() : _OrderIndex.get(state).values();
+		} else {
+			PageCursor cursor = PageCursor.parse(afterCursor);
+			if (cursor == null) {
+				return new Page("ERROR" + "Not a cursor of a page!");
+			}
+			if (state == null) {
+				items = _SequenceIndex.tailMap(cursor.sequence(), false).values();
+			} else {
+				Item after = probe(cursor.key().creator(), cursor.key().title(), cursor.acquisitionDay(), cursor.sequence());
+				items = _OrderIndex.get(state).tailMap(after, false).values();
+			}
+		}
 		List<String> result = new ArrayList<String>();
-		if(_ItemList.isEmpty()) {
-			return result;
+		Iterator<Item> iterator = items.iterator();
+		Item last = null;
+		while (result.size() < limit && iterator.hasNext()) {
+			last = iterator.next();
+			result.add(display(last));
 		}
-		Item C = _ItemList.get(0);
-		
-		//Use Enum to do different comparison.
-		if (order == "Creator") {
-			Collections.sort(_ItemList, C.sorting(State.CREATOR));
-		}else if (order == "Title") {
-			Collections.sort(_ItemList, C.sorting(State.TITLE));
-		}else if (order == "Acquisition") {
-			Collections.sort(_ItemList, C.sorting(State.ACQUISITION));
-		}
-		for (int i = 0; i<_ItemList.size(); i++) {
-			Item CurrentItem = _ItemList.get(i);
-			String current = getItemToDisplay(CurrentItem._creator, CurrentItem._title, CurrentItem._formatStr);
-			result.add(current);
+		if (last == null || !iterator.hasNext()) {
+			return new Page(result, null);
 		}
-		return result;
+		return new Page(result, new PageCursor(last.key(), last._acquisitionDay, last._sequence).toString());
 	}
 	
 	/**
@@ -162,51 +479,202 @@ public class InventoryManImpl implements InventoryMan {
 	 */
 	
 	public List<String> getItemsAcquiredInYear(String year){
+		return LineIterator.toList(iterateItemsAcquiredInYear(year));
+	}
+	
+	/**
+	 * Return a list of all items acquired between the two dates (both included) in order of
+	 * date of acquisition as a list of strings, where each string provides
+	 * the details of the item using the same format
+	 * as used by {@link #getItemToDisplay(String, String, String)}.
+	 * @param fromDateStr The first date of acquisition to include (ISO8601 format)
+	 * @param toDateStr The last date of acquisition to include (ISO8601 format)
+	 * @return The list of items acquired between the dates in order of date of acquisition.
+	 */
+	
+	public List<String> getItemsAcquiredBetween(String fromDateStr, String toDateStr){
+		return LineIterator.toList(iterateItemsAcquiredBetween(fromDateStr, toDateStr));
+	}
+	
+	/**
+	 * Return a list of all creators of items in the inventory in alphabetical
+	 * order. If there are multiple items with the same creator then that creator 
+	 * should only appear once in the list. 
+	 * @return The list of creators in alphabetical order.
+	 */
+	
+	public List<String> getCreators(){
+		//The creator index is already sorted and holds each creator once.
+		return _CreatorIndex.creators();
+	}
+	
+	/**
+	 * Return a list of the creators of items in the inventory whose names start with the
+	 * specified prefix, in alphabetical order, each only once.
+	 * @param prefix The start of the names of the creators.
+	 * @return The list of creators starting with the prefix in alphabetical order.
+	 */
+	
+	public List<String> getCreatorsStartingWith(String prefix){
+		return _CreatorIndex.creatorsStartingWith(prefix);
+	}
+	
+	/**
+	 * Return a list of all items of the specified creator in the order they were added. The items of
+	 * a creator are next to each other in the creator index, so it is entered at the first of them.
+	 * @param creator The artist or author of the items.
+	 * @return The list of the items of the creator, empty if there are none.
+	 */
+	
+	public List<String> getItemsByCreator(String creator){
 		List<String> result = new ArrayList<String>();
-		List<Item> ItemAc = new ArrayList<Item>();
 		
-		//Get items with specific acquisition Year.
-		for(int i = 0; i<_ItemList.size(); i++) {
-			String releaseYear = _ItemList.get(i)._acquisitionDateStr;
-			if (releaseYear.indexOf(year) != -1) {
-				ItemAc.add(_ItemList.get(i));
+		if (!_CreatorIndex.contains(creator)) {
+			return result;
+		}
+		Item first = probe(creator, "", 0, Integer.MIN_VALUE);
+		for (Item CurrentItem : _OrderIndex.get(State.CREATOR).tailMap(first, true).values()) {
+			if (!CurrentItem._creator.equals(first._creator)) {
+				break;
 			}
+			result.add(display(CurrentItem));
 		}
-		if(_ItemList.isEmpty()) {
+		return result;
+	}
+	
+	/**
+	 * Return the number of items and the total, lowest and highest cost of the items of each group,
+	 * from the summaries kept as items are added, removed and changed.
+	 * @param grouping How to group the items, either "Owner", "Format", "Year" or "Type".
+	 * @return The summary of each group, in alphabetical order of the groups, or no groups for other groupings.
+	 */
+	
+	public SortedMap<String, CostSummary> getCostSummary(String grouping){
+		Grouping by = Grouping.fromName(grouping);
+		if (by == null) {
+			return new TreeMap<String, CostSummary>();
+		}
+		return _Aggregates.summaries(by);
+	}
+	
+	/**
+	 * Find the items matching a query. The items of the creator, of the owner and acquired in the range
+	 * of dates are each counted from the indexes without reading them, and only the fewest are read.
+	 * If they are already in the order of the query the search stops at the limit, otherwise only the
+	 * first items in the order are kept as they are read.
+	 * @param query The filters, order and limit of the items to find.
+	 * @return A list of the strings of the items found.
+	 */
+	
+	public List<String> find(ItemQuery query){
+		List<String> result = new ArrayList<String>();
+		ItemQuery.Filter filter = query.filter(_Strings);
+		State order = query.order();
+		int limit = query.limit();
+		if (filter._none || limit <= 0) {
 			return result;
 		}
-		Item C = _ItemList.get(0);
 		
-		//Sort the item list.
-		Collections.sort(ItemAc, C.sorting(State.ACQUISITION));
-		for(int i = 0; i<ItemAc.size(); i++) {
-			Item CurrentItem = ItemAc.get(i);
-			String current = getItemToDisplay(CurrentItem._creator, CurrentItem._title, CurrentItem._formatStr);
-			result.add(current);
+		//Start from all items in the order of the query, then from any index holding fewer items.
+		Iterable<Item> candidates = order == null ? _SequenceIndex.values() : _OrderIndex.get(order).values();
+		boolean inOrder = true;
+		long fewest = _ItemIndex.size();
+		if (filter._creatorId != ItemQuery.Filter.ANY) {
+			String creator = filter._creator;
+			int count = _CreatorIndex.count(creator);
+			if (count < fewest) {
+				fewest = count;
+				Item first = probe(creator, "", 0, Integer.MIN_VALUE);
+				Item last = probe(creator, "", 0, Integer.MAX_VALUE);
+				candidates = _OrderIndex.get(State.CREATOR).subMap(first, true, last, true).values();
+				inOrder = order == null || order == State.CREATOR; //the items of a creator are in the order added
+			}
+		}
+		if (filter._ownerId != ItemQuery.Filter.ANY) {
+			String owner = filter._owner;
+			int count = _Aggregates.count(Grouping.OWNER, owner);
+			if (count < fewest) {
+				fewest = count;
+				OwnerSegment segment = _OwnerIndex.get(owner);
+				candidates = segment == null ? Collections.<Item>emptyList() : segment.items();
+				inOrder = false;
+			}
+		}
+		if (filter.hasDays()) {
+			int fromYear = LocalDate.ofEpochDay(filter._fromDay).getYear();
+			int toYear = LocalDate.ofEpochDay(filter._toDay).getYear();
+			long count = 0;
+			for (int year : _YearIndex.subMap(fromYear, true, toYear, true).keySet()) {
+				count += _Aggregates.count(Grouping.YEAR, CostAggregates.yearGroup(year));
+			}
+			if (count < fewest) {
+				fewest = count;
+				Item first = probe(null, "", filter._fromDay, Integer.MIN_VALUE);
+				Item last = probe(null, "", filter._toDay, Integer.MAX_VALUE);
+				candidates = _OrderIndex.get(State.ACQUISITION).subMap(first, true, last, true).values();
+				inOrder = order == State.ACQUISITION;
+			}
+		}
+		
+		if (inOrder) {
+			for (Item CurrentItem : candidates) {
+				if (filter.matches(CurrentItem)) {
+					result.add(display(CurrentItem));
+					if (result.size() == limit) {
+						break;
+					}
+				}
+			}
+			return result;
+		}
+		
+		//Keep the first items in the order, the last of them at the head so it is the one dropped.
+		Comparator<Item> sorting;
+		if (order == null) {
+			sorting = new Comparator<Item>() {
+				@Override
+				public int compare(Item I1, Item I2) {
+					return Integer.compare(I1._sequence, I2._sequence);
+				}
+			};
+		} else {
+			sorting = Item.sorting(order);
+		}
+		PriorityQueue<Item> kept = new PriorityQueue<Item>((int) Math.min(limit, fewest) + 1, Collections.reverseOrder(sorting));
+		for (Item CurrentItem : candidates) {
+			if (filter.matches(CurrentItem)) {
+				kept.add(CurrentItem);
+				if (kept.size() > limit) {
+					kept.poll();
+				}
+			}
+		}
+		Item[] found = new Item[kept.size()];
+		for (int i = found.length - 1; i >= 0; i--) {
+			found[i] = kept.poll();
+		}
+		for (Item CurrentItem : found) {
+			result.add(display(CurrentItem));
 		}
 		return result;
 	}
 	
 	/**
-	 * Return a list of all creators of items in the inventory in alphabetical
-	 * order. If there are multiple items with the same creator then that creator 
-	 * should only appear once in the list. 
-	 * @return The list of creators in alphabetical order.
+	 * Search the titles, creators and publishers of the items for words, using the search index,
+	 * so only the items with the words are looked at.
+	 * @param query The words to search for.
+	 * @param limit The most items to return.
+	 * @return A list of the strings of the best matching items.
 	 */
 	
-	public List<String> getCreators(){
+	public List<String> search(String query, int limit){
 		List<String> result = new ArrayList<String>();
-		
-		//First get creators for all items including repeated ones.
-		for (int i = 0; i<_ItemList.size(); i++) {
-			result.add(_ItemList.get(i)._creator);
+		for (int sequence : _SearchIndex.search(query, limit)) {
+			Item CurrentItem = _SequenceIndex.get(sequence);
+			if (CurrentItem != null) {
+				result.add(display(CurrentItem));
+			}
 		}
-		
-		//Use linked hash set to remove the repeated creator.
-		Set<String> set = new LinkedHashSet<String>();
-		set.addAll(result);
-		result.clear();
-		result.addAll(set);
 		return result;
 	}
 	
@@ -231,35 +699,670 @@ public class InventoryManImpl implements InventoryMan {
 	 */
 	
 	public List<String> getFlatReport(){
-		List<String> result = new ArrayList<String>();
+		List<String> result = new ArrayList<String>(_ItemIndex.size() + 1);
 		result.add(_flatName);
 		
-		//Sort the item at different order by using else if.
-		Collections.sort(_ItemList, new Comparator<Item>() {
+		//The owners are in alphabetical order and each segment holds the lines already rendered in the order of the report.
+		for (OwnerSegment segment : _OwnerIndex.values()) {
+			result.addAll(segment.lines());
+		}
+		return result;
+	}
+	
+	/**
+	 * Append all items in the specified order to a buffer of the caller, each followed by a new line.
+	 * Each item is appended straight to the buffer, or its kept string is if strings are cached.
+	 * @param order The order to list the items
+	 * @param out Where to append the items.
+	 */
+	
+	public void appendAll(String order, StringBuilder out){
+		State state = State.fromOrder(order);
+		Iterable<Item> items = state == null ? _SequenceIndex.values() : _OrderIndex.get(state).values();
+		for (Item CurrentItem : items) {
+			if (_cacheStrings) {
+				out.append(CurrentItem.renderedString());
+			} else {
+				CurrentItem.appendTo(out);
+			}
+			out.append('\n');
+		}
+	}
+	
+	/**
+	 * Iterate over all items in the specified order, making the string of each item when the
+	 * iterator reaches it. Items added meanwhile may or may not be reached.
+	 * @param order The order to list the items
+	 * @return An iterator over the strings of the items.
+	 */
+	
+	public Iterator<String> iterateAll(String order){
+		//Use Enum to pick the ordered index, unknown orders are listed in the order items were added.
+		State state = State.fromOrder(order);
+		Iterable<Item> items = state == null ? _SequenceIndex.values() : _OrderIndex.get(state).values();
+		return render(items.iterator());
+	}
+	
+	/**
+	 * Iterate over the items acquired in the specified year in order of date of acquisition,
+	 * making the string of each item when the iterator reaches it.
+	 * @param year The year in which the item should have been acquired
+	 * @return An iterator over the strings of the items.
+	 */
+	
+	public Iterator<String> iterateItemsAcquiredInYear(String year){
+		//The bucket of the year is already in order of acquisition.
+		ConcurrentNavigableMap<Item, Item> bucket = _YearIndex.get(parseYear(year));
+		if (bucket == null) {
+			return Collections.<String>emptyIterator();
+		}
+		return render(bucket.values().iterator());
+	}
+	
+	/**
+	 * Iterate over the items acquired between the two dates (both included) in order of date
+	 * of acquisition, making the string of each item when the iterator reaches it.
+	 * @param fromDateStr The first date of acquisition to include (ISO8601 format)
+	 * @param toDateStr The last date of acquisition to include (ISO8601 format)
+	 * @return An iterator over the strings of the items.
+	 */
+	
+	public Iterator<String> iterateItemsAcquiredBetween(String fromDateStr, String toDateStr){
+		final int fromDay = ItemValidator.toEpochDay(fromDateStr);
+		final int toDay = ItemValidator.toEpochDay(toDateStr);
+		if (fromDay == ItemValidator.INVALID_DAY || toDay == ItemValidator.INVALID_DAY || toDay < fromDay) {
+			return Collections.<String>emptyIterator();
+		}
+		int fromYear = LocalDate.ofEpochDay(fromDay).getYear();
+		int toYear = LocalDate.ofEpochDay(toDay).getYear();
+		final Iterator<ConcurrentNavigableMap<Item, Item>> buckets = _YearIndex.subMap(fromYear, true, toYear, true).values().iterator();
+		
+		//Only the buckets of the first and last year need their dates checked.
+		return new LineIterator() {
+			private Iterator<Item> _items = Collections.<Item>emptyIterator();
+			
+			@Override
+			protected String nextLine() {
+				while (true) {
+					while (!_items.hasNext()) {
+						if (!buckets.hasNext()) {
+							return null;
+						}
+						_items = buckets.next().values().iterator();
+					}
+					Item CurrentItem = _items.next();
+					if (CurrentItem._acquisitionDay > toDay) {
+						return null;
+					}
+					if (CurrentItem._acquisitionDay >= fromDay) {
+						return display(CurrentItem);
+					}
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Iterate over the creators of items in the inventory in alphabetical order.
+	 * @return An iterator over the creators.
+	 */
+	
+	public Iterator<String> iterateCreators(){
+		return _CreatorIndex.iterator();
+	}
+	
+	/**
+	 * Iterate over the lines of the report, the name of the flat first, then the rendered
+	 * lines of each owner in turn. The segments of the owners are read as they were published when
+	 * the iterator was made, so items added, removed or transferred meanwhile are not reached.
+	 * @return An iterator over the lines of the report.
+	 */
+	
+	public Iterator<String> iterateFlatReport(){
+		final Iterator<OwnerSegment> segments = _OwnerIndex.values().iterator();
+		return new LineIterator() {
+			private Iterator<String> _lines = Collections.singletonList(_flatName).iterator();
+			
 			@Override
-			public int compare(Item I1, Item I2) {
-				if (I1._owner!=I2._owner) {
-					return I1._owner.compareTo(I2._owner);
-				}else if ((I1 instanceof Book && I2 instanceof Music)||(I1 instanceof Music && I2 instanceof Book)) {
-					return I1.stateType.compareTo (I2.stateType);
-				}else if (I1._creator!=I2._creator) {
-					return I1._creator.compareTo(I2._creator);
+			protected String nextLine() {
+				while (!_lines.hasNext()) {
+					if (!segments.hasNext()) {
+						return null;
+					}
+					_lines = segments.next().lines().iterator();
 				}
-				return I1._title.compareTo(I2._title);
+				return _lines.next();
 			}
-		});
+		};
+	}
+	
+	/**
+	 * Iterate over the records of all items in the order they were added, making the record of
+	 * each item when the iterator reaches it. Items added meanwhile may or may not be reached.
+	 * @return An iterator over the records of the items.
+	 */
+	
+	public Iterator<ItemRecord> iterateRecords(){
+		final Iterator<Item> items = _SequenceIndex.values().iterator();
+		return new Iterator<ItemRecord>() {
+			@Override
+			public boolean hasNext() {
+				return items.hasNext();
+			}
+			
+			@Override
+			public ItemRecord next() {
+				return items.next().toRecord();
+			}
+		};
+	}
+	
+	/**
+	 * Add many items to the inventory at once. The records are checked and their items created
+	 * in parallel, then the items are added in the order of the records and the ordered indexes
+	 * are built once at the end, one index per thread. The result for each record is the same
+	 * as adding it with {@link #addBook} or {@link #addMusic}.
+	 * @param records The items to add.
+	 * @return A list with the result of adding each record, in the order of the records, either "Success"
+	 * or a string beginning with "ERROR" and the rest of the string providing some details as to what went wrong.
+	 */
+	
+	public List<String> addAll(List<ItemRecord> records) {
+		ItemRecord[] rows = records.toArray(new ItemRecord[records.size()]);
+		Item[] items = new Item[rows.length];
+		String[] results = new String[rows.length];
+		ForkJoinPool.commonPool().invoke(new BuildTask(rows, items, results, 0, rows.length));
 		
-		//For sorted itemlist, get a report of each elements.
-		for (int i = 0; i < _ItemList.size(); i++) {
-			Item CurrentItem = _ItemList.get(i);
-			String currentString;
-			if (CurrentItem instanceof Book) {
-				currentString = CurrentItem._owner + ": "+ CurrentItem._creator + ", '" + CurrentItem._title + "'. (" + CurrentItem._formatStr + ")";
-			}else {
-				currentString = CurrentItem._owner + ": '" + CurrentItem._title + "' by " + CurrentItem._creator + " (" + CurrentItem._formatStr + ")";
+		List<Item> added = new ArrayList<Item>(rows.length);
+		long ticket;
+		synchronized (_writeLock) {
+			for (int i = 0; i < rows.length; i++) {
+				if (items[i] == null) {
+					continue;
+				}
+				results[i] = claim(items[i]);
+				if (results[i].equals("Success")) {
+					added.add(items[i]);
+				}
+			}
+			indexAll(added);
+			ticket = _logTicket;
+		}
+		String error = commitLog(ticket);
+		if (error != null) {
+			for (int i = 0; i < results.length; i++) {
+				if (results[i].equals("Success")) {
+					results[i] = error;
+				}
+			}
+		}
+		return Arrays.asList(results);
+	}
+	
+	/**
+	 * Write a snapshot of the inventory, which can be opened to answer queries at once after a restart.
+	 * Adding items waits until the snapshot is written, queries do not. Every change is committed to
+	 * the write-ahead log first, if there is one, so the snapshot only holds what the log does.
+	 * If the inventory was opened with this snapshot file, the log is emptied once the snapshot is on disk.
+	 * A crash before that only means the whole log is replayed over the snapshot, which ends with the same items.
+	 * @param file The file to write, replaced if it exists.
+	 * @throws IOException If the file or the log can not be written.
+	 * @see InventorySnapshot#open(Path)
+	 * @see #open(String, Path, Path, FsyncPolicy)
+	 */
+	public void writeSnapshot(Path file) throws IOException {
+		synchronized (_writeLock) {
+			if (commitLog(_logTicket) != null) {
+				throw new IOException("The write-ahead log could not be written");
+			}
+			InventorySnapshot.write(this, file);
+			//The same file may be named by another path, so it is compared as a file.
+			if (_log != null && _snapshotFile != null && Files.exists(_snapshotFile)
+					&& Files.isSameFile(file, _snapshotFile)) {
+				_log.truncate();
+			}
+		}
+	}
+	
+	/**
+	 * @return Every item of the inventory, in the order the items were added.
+	 */
+	Iterable<Item> items() {
+		return _SequenceIndex.values();
+	}
+	
+	/**
+	 * @param state The order of the items.
+	 * @return Every item of the inventory, in the order of the state.
+	 */
+	Iterable<Item> items(State state) {
+		if (state == State.OWNER) {
+			List<Item> items = new ArrayList<Item>(_ItemIndex.size());
+			for (OwnerSegment segment : _OwnerIndex.values()) {
+				items.addAll(segment.items());
+			}
+			return items;
+		}
+		return _OrderIndex.get(state).values();
+	}
+	
+	/**
+	 * @return The name of the flat.
+	 */
+	String getFlatName() {
+		return _flatName;
+	}
+	
+	/**
+	 * Make the string of each item when the iterator reaches it.
+	 * @param items The items.
+	 * @return An iterator over the strings of the items.
+	 */
+	private Iterator<String> render(final Iterator<Item> items) {
+		return new LineIterator() {
+			@Override
+			protected String nextLine() {
+				return items.hasNext() ? display(items.next()) : null;
 			}
-			result.add(currentString);
+		};
+	}
+	
+	/**
+	 * Make an item to look up a place in an ordered index, before or after every item with the
+	 * same creator, title or date of acquisition.
+	 * @param creator The creator, or null.
+	 * @param title The title.
+	 * @param acquisitionDay The date of acquisition as days since 1970-01-01.
+	 * @param sequence Integer.MIN_VALUE to come before the items, Integer.MAX_VALUE to come after them,
+	 * or the sequence of an item to come where it does.
+	 * @return The item.
+	 */
+	private static Item probe(String creator, String title, int acquisitionDay, int sequence) {
+		Item probe = new Music(creator, title, null, acquisitionDay, null, null, 0, null);
+		probe._sequence = sequence;
+		return probe;
+	}
+	
+	/**
+	 * @return The string of an item, the one kept in the item if strings are cached.
+	 */
+	private String display(Item item) {
+		return _cacheStrings ? item.renderedString() : item.asString();
+	}
+	
+	/**
+	 * Put a validated item into the inventory, keeping the index by creator, title and format
+	 * and the ordered indexes up to date. There can not be two items with the same creator, title and format.
+	 * @param item The item to add.
+	 * @return A string, either "Success" or a string beginning with "ERROR" if the item already exists.
+	 */
+	private String addItem(Item item) {
+		long ticket;
+		synchronized (_writeLock) {
+			String result = claim(item);
+			if (!result.equals("Success")) {
+				return result;
+			}
+			index(item);
+			ticket = _logTicket;
+		}
+		String error = commitLog(ticket);
+		if (error != null) {
+			return error;
+		}
+		return "Success";
+	}
+	
+	/**
+	 * Add an item to the index by creator, title and format and to the write-ahead log, unless
+	 * there is already an item with the same creator, title and format. Must hold the write lock.
+	 * @param item The item to add.
+	 * @return A string, either "Success" or a string beginning with "ERROR" if the item already exists
+	 * or can not be written to the log.
+	 */
+	private String claim(final Item item) {
+		ItemKey key = item.key();
+		if (_ItemIndex.containsKey(key)) {
+			return "ERROR" + "Item already exists!";
+		}
+		if (_log != null) {
+			try {
+				_logTicket = _log.append(item.toRecord());
+			} catch (IOException e) {
+				return "ERROR" + "Could not write the log!";
+			}
+			
+			//The item is in every index by the time the write lock is let go and a change can be undone.
+			uncommitted(new Undo(_logTicket) {
+				@Override
+				void undo() {
+					unindex(item);
+				}
+			});
+		}
+		item.share(_Strings);
+		item._sequence = _nextSequence++;
+		_SequenceIndex.put(item._sequence, item);
+		_ItemIndex.put(key, item);
+		return "Success";
+	}
+	
+	/**
+	 * Wait until the items added or changed up to the ticket are as safe in the write-ahead log as its
+	 * policy requires. Other writers may add items meanwhile and share the same force to disk.
+	 * If the entry can not be committed, the changes not yet committed are undone.
+	 * @param ticket The ticket of the last entry added to the log.
+	 * @return null, or a string beginning with "ERROR" if the log could not be written.
+	 */
+	private String commitLog(long ticket) {
+		if (_log == null || ticket == 0) {
+			return null;
+		}
+		try {
+			_log.commit(ticket);
+		} catch (IOException e) {
+			
+			//The log takes no more entries, so the changes to undo are the last ones made.
+			synchronized (_writeLock) {
+				long committed = _log.committed();
+				while (!_uncommitted.isEmpty() && _uncommitted.peekLast()._ticket > committed) {
+					_uncommitted.pollLast().undo();
+				}
+			}
+			return "ERROR" + "Could not write the log!";
+		}
+		return null;
+	}
+	
+	/**
+	 * Keep the way to undo a change until its entry in the log is committed, dropping those
+	 * already committed. Must hold the write lock.
+	 * @param undo The way to undo the change.
+	 */
+	private void uncommitted(Undo undo) {
+		long committed = _log.committed();
+		while (!_uncommitted.isEmpty() && _uncommitted.peekFirst()._ticket <= committed) {
+			_uncommitted.pollFirst();
+		}
+		_uncommitted.addLast(undo);
+	}
+	
+	/**
+	 * Replace an item with a changed copy of it in every index, so a reader finds either the item or
+	 * the copy and never an item being changed. The copy has the same key and sequence and is sorted
+	 * the same in every order but the one of the report, so only the segments of the owners are
+	 * taken apart. Must hold the write lock.
+	 * @param item The item in the indexes.
+	 * @param changed The copy to put in its place.
+	 */
+	private void replace(Item item, Item changed) {
+		_SequenceIndex.put(changed._sequence, changed);
+		_ItemIndex.put(changed.key(), changed);
+		for (ConcurrentNavigableMap<Item, Item> index : _OrderIndex.values()) {
+			index.put(changed, changed);
+		}
+		_YearIndex.get(changed.acquisitionYear()).put(changed, changed);
+		SortedMap<String, OwnerSegment> owners = new TreeMap<String, OwnerSegment>(_OwnerIndex);
+		removeOwned(owners, item);
+		addOwned(owners, changed);
+		_OwnerIndex = Collections.unmodifiableSortedMap(owners);
+		_Aggregates.remove(item);
+		_Aggregates.add(changed);
+	}
+	
+	/**
+	 * Add a claimed item to the ordered indexes, to the bucket of its year, to the segment of
+	 * its owner, to the creator and search indexes and to the cost summaries. Must hold the write lock.
+	 * @param item The item to add.
+	 */
+	private void index(Item item) {
+		for (ConcurrentNavigableMap<Item, Item> index : _OrderIndex.values()) {
+			index.put(item, item);
+		}
+		addToYearIndex(item);
+		addToOwnerIndex(item);
+		_CreatorIndex.add(item.creator());
+		_SearchIndex.add(item._sequence, item);
+		_Aggregates.add(item);
+	}
+	
+	/**
+	 * Take an item out of every index. Each index is sorted or hashed, so the item is found
+	 * by its place and the cost is the log of the number of items. Must hold the write lock.
+	 * @param item The item to remove.
+	 */
+	private void unindex(Item item) {
+		_ItemIndex.remove(item.key());
+		_SequenceIndex.remove(item._sequence);
+		for (ConcurrentNavigableMap<Item, Item> index : _OrderIndex.values()) {
+			index.remove(item);
+		}
+		ConcurrentNavigableMap<Item, Item> bucket = _YearIndex.get(item.acquisitionYear());
+		bucket.remove(item);
+		if (bucket.isEmpty()) {
+			_YearIndex.remove(item.acquisitionYear());
+		}
+		removeFromOwnerIndex(item);
+		_CreatorIndex.remove(item.creator());
+		_SearchIndex.remove(item._sequence, item);
+		_Aggregates.remove(item);
+	}
+	
+	/**
+	 * Add claimed items to the ordered indexes, to the buckets of their years, to the segments
+	 * of their owners, to the creator and search indexes and to the cost summaries, building each index in its own thread.
+	 * Must hold the write lock.
+	 * @param items The items to add.
+	 */
+	private void indexAll(final List<Item> items) {
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		for (final ConcurrentNavigableMap<Item, Item> index : _OrderIndex.values()) {
+			tasks.add(ForkJoinTask.adapt(new Runnable() {
+				@Override
+				public void run() {
+					for (Item item : items) {
+						index.put(item, item);
+					}
+				}
+			}));
+		}
+		tasks.add(ForkJoinTask.adapt(new Runnable() {
+			@Override
+			public void run() {
+				for (Item item : items) {
+					addToYearIndex(item);
+				}
+			}
+		}));
+		tasks.add(ForkJoinTask.adapt(new Runnable() {
+			@Override
+			public void run() {
+				//Each segment is copied once, with all the items of its owner merged in.
+				Map<String, List<Item>> byOwner = new TreeMap<String, List<Item>>();
+				for (Item item : items) {
+					List<Item> owned = byOwner.get(item.owner());
+					if (owned == null) {
+						owned = new ArrayList<Item>();
+						byOwner.put(item.owner(), owned);
+					}
+					owned.add(item);
+				}
+				SortedMap<String, OwnerSegment> owners = new TreeMap<String, OwnerSegment>(_OwnerIndex);
+				for (Map.Entry<String, List<Item>> owned : byOwner.entrySet()) {
+					Collections.sort(owned.getValue(), Item.sorting(State.OWNER));
+					OwnerSegment segment = owners.get(owned.getKey());
+					owners.put(owned.getKey(), (segment == null ? OwnerSegment.EMPTY : segment).withAll(owned.getValue()));
+				}
+				_OwnerIndex = Collections.unmodifiableSortedMap(owners);
+			}
+		}));
+		tasks.add(ForkJoinTask.adapt(new Runnable() {
+			@Override
+			public void run() {
+				for (Item item : items) {
+					_CreatorIndex.add(item.creator());
+				}
+			}
+		}));
+		tasks.add(ForkJoinTask.adapt(new Runnable() {
+			@Override
+			public void run() {
+				for (Item item : items) {
+					_SearchIndex.add(item._sequence, item);
+				}
+			}
+		}));
+		tasks.add(ForkJoinTask.adapt(new Runnable() {
+			@Override
+			public void run() {
+				for (Item item : items) {
+					_Aggregates.add(item);
+				}
+			}
+		}));
+		ForkJoinTask.invokeAll(tasks);
+	}
+	
+	/**
+	 * Add an item to the bucket of the year it was acquired, creating the bucket if needed.
+	 * @param item The item to add.
+	 */
+	private void addToYearIndex(Item item) {
+		ConcurrentNavigableMap<Item, Item> bucket = _YearIndex.get(item.acquisitionYear());
+		if (bucket == null) {
+			bucket = new ConcurrentSkipListMap<Item, Item>(Item.sorting(State.ACQUISITION));
+			_YearIndex.put(item.acquisitionYear(), bucket);
+		}
+		bucket.put(item, item);
+	}
+	
+	/**
+	 * Add an item to the segment of its owner, publishing the segments of the owners anew.
+	 * @param item The item to add.
+	 */
+	private void addToOwnerIndex(Item item) {
+		SortedMap<String, OwnerSegment> owners = new TreeMap<String, OwnerSegment>(_OwnerIndex);
+		addOwned(owners, item);
+		_OwnerIndex = Collections.unmodifiableSortedMap(owners);
+	}
+	
+	/**
+	 * Remove an item from the segment of its owner, publishing the segments of the owners anew.
+	 * @param item The item to remove.
+	 */
+	private void removeFromOwnerIndex(Item item) {
+		SortedMap<String, OwnerSegment> owners = new TreeMap<String, OwnerSegment>(_OwnerIndex);
+		removeOwned(owners, item);
+		_OwnerIndex = Collections.unmodifiableSortedMap(owners);
+	}
+	
+	/**
+	 * Replace the segment of the owner of an item with one holding the item, creating the segment if needed.
+	 * @param owners A copy of the segments of the owners, not yet published.
+	 * @param item The item to add.
+	 */
+	private static void addOwned(SortedMap<String, OwnerSegment> owners, Item item) {
+		OwnerSegment segment = owners.get(item.owner());
+		owners.put(item.owner(), (segment == null ? OwnerSegment.EMPTY : segment).with(item));
+	}
+	
+	/**
+	 * Replace the segment of the owner of an item with one without the item, dropping the segment
+	 * if the owner has no items left.
+	 * @param owners A copy of the segments of the owners, not yet published.
+	 * @param item The item to remove.
+	 */
+	private static void removeOwned(SortedMap<String, OwnerSegment> owners, Item item) {
+		OwnerSegment segment = owners.get(item.owner()).without(item);
+		if (segment.isEmpty()) {
+			owners.remove(item.owner());
+		} else {
+			owners.put(item.owner(), segment);
+		}
+	}
+	
+	/**
+	 * Convert a year of four digits to a number.
+	 * @param year The year as a string.
+	 * @return The year as a number, or -1 if the string is not four digits.
+	 */
+	static int parseYear(String year) {
+		if (year == null || year.length() != 4) {
+			return -1;
+		}
+		int result = 0;
+		for (int i = 0; i < 4; i++) {
+			char digit = year.charAt(i);
+			if (digit < '0' || digit > '9') {
+				return -1;
+			}
+			result = result * 10 + (digit - '0');
 		}
 		return result;
 	}
+	
+	/**
+	 * This Undo class takes back a change to the inventory whose entry in the write-ahead log
+	 * may not be committed. Changes are undone last first, under the write lock.
+	 */
+	private abstract static class Undo {
+		private final long _ticket;
+		
+		/**
+		 * @param ticket The ticket of the entry of the change.
+		 */
+		Undo(long ticket) {
+			_ticket = ticket;
+		}
+		
+		/**
+		 * Take back the change.
+		 */
+		abstract void undo();
+	}
+	
+	/**
+	 * This BuildTask checks records and creates their items, splitting the records in halves
+	 * until there are few enough for one thread.
+	 */
+	private static class BuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int RECORDS_PER_TASK = 1024;
+		private final ItemRecord[] _records;
+		private final Item[] _items;
+		private final String[] _results;
+		private final int _from;
+		private final int _to;
+		
+		/**
+		 * @param records The records to check.
+		 * @param items Where to put the item of each valid record.
+		 * @param results Where to put the error of each record which is not valid.
+		 * @param from The first record for this task.
+		 * @param to The record after the last record for this task.
+		 */
+		BuildTask(ItemRecord[] records, Item[] items, String[] results, int from, int to) {
+			_records = records;
+			_items = items;
+			_results = results;
+			_from = from;
+			_to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (_to - _from <= RECORDS_PER_TASK) {
+				for (int i = _from; i < _to; i++) {
+					_items[i] = _records[i].toItem();
+					if (_items[i] == null) {
+						_results[i] = "ERROR" + _records[i].validate().message();
+					}
+				}
+				return;
+			}
+			int middle = (_from + _to) >>> 1;
+			invokeAll(new BuildTask(_records, _items, _results, _from, middle),
+					new BuildTask(_records, _items, _results, middle, _to));
+		}
+	}
 }
@@ -0,0 +1,179 @@
+package inventoryman;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This InventoryService class manages the inventories of many flats. The flats are spread over
+ * shards by the hash of their names, and each shard has its own lock, so finding or creating the
+ * inventory of a flat only waits for other flats of the same shard. Each inventory is safe to share
+ * between threads by itself, so items are added and queried without the lock of the shard.
+ * <p>
+ * Queries across all flats ask every shard at once, one task per shard, and gather the answers
+ * of the flats in alphabetical order of their names.
+ *
+ */
+public class InventoryService {
+	private final Shard[] _shards;
+	private final Storage _storage;
+
+	/**
+	 * Create a service whose flats keep their items as objects.
+	 * @param shardCount The number of shards, at least 1.
+	 */
+	public InventoryService(int shardCount) {
+		this(shardCount, Storage.OBJECTS);
+	}
+
+	/**
+	 * Create a service.
+	 * @param shardCount The number of shards, at least 1.
+	 * @param storage How the inventories of the flats keep their items.
+	 */
+	public InventoryService(int shardCount, Storage storage) {
+		_shards = new Shard[Math.max(shardCount, 1)];
+		for (int i = 0; i < _shards.length; i++) {
+			_shards[i] = new Shard();
+		}
+		_storage = storage;
+	}
+
+	/**
+	 * Provide the inventory of a flat, creating an empty one the first time the flat is named.
+	 * @param flatName The name of the flat.
+	 * @return The inventory of the flat.
+	 */
+	public InventoryMan getFlat(String flatName) {
+		return shard(flatName).flat(flatName, _storage);
+	}
+
+	/**
+	 * Return the names of all flats in alphabetical order.
+	 * @return The list of the names of the flats.
+	 */
+	public List<String> getFlatNames() {
+		List<String> result = new ArrayList<String>();
+		for (Shard shard : _shards) {
+			result.addAll(shard.flats().keySet());
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * Return the items of the specified creator in every flat, as
+	 * {@link InventoryMan#getItemsByCreator(String)} lists them for one flat.
+	 * @param creator The artist or author of the items.
+	 * @return The items of the creator by the name of their flat, in alphabetical order of the flats,
+	 * leaving out the flats with no items of the creator.
+	 */
+	public SortedMap<String, List<String>> getItemsByCreator(final String creator) {
+		return gather(new FlatQuery() {
+			@Override
+			List<String> ask(InventoryMan flat) {
+				return flat.getItemsByCreator(creator);
+			}
+		});
+	}
+
+	/**
+	 * Return the items acquired in the specified year in every flat, as
+	 * {@link InventoryMan#getItemsAcquiredInYear(String)} lists them for one flat.
+	 * @param year The year in which the items should have been acquired.
+	 * @return The items acquired in the year by the name of their flat, in alphabetical order of the flats,
+	 * leaving out the flats with no items acquired in the year.
+	 */
+	public SortedMap<String, List<String>> getItemsAcquiredInYear(final String year) {
+		return gather(new FlatQuery() {
+			@Override
+			List<String> ask(InventoryMan flat) {
+				return flat.getItemsAcquiredInYear(year);
+			}
+		});
+	}
+
+	/**
+	 * Ask a query of every flat, one task per shard, and gather the answers which are not empty.
+	 * @param query The query.
+	 * @return The answers by the name of their flat, in alphabetical order of the flats.
+	 */
+	private SortedMap<String, List<String>> gather(final FlatQuery query) {
+		List<ForkJoinTask<Map<String, List<String>>>> tasks = new ArrayList<ForkJoinTask<Map<String, List<String>>>>();
+		for (final Shard shard : _shards) {
+			tasks.add(ForkJoinTask.adapt(new Callable<Map<String, List<String>>>() {
+				@Override
+				public Map<String, List<String>> call() {
+					Map<String, List<String>> answers = new HashMap<String, List<String>>();
+					for (Map.Entry<String, InventoryMan> flat : shard.flats().entrySet()) {
+						List<String> answer = query.ask(flat.getValue());
+						if (!answer.isEmpty()) {
+							answers.put(flat.getKey(), answer);
+						}
+					}
+					return answers;
+				}
+			}));
+		}
+		SortedMap<String, List<String>> result = new TreeMap<String, List<String>>();
+		for (ForkJoinTask<Map<String, List<String>>> task : ForkJoinTask.invokeAll(tasks)) {
+			result.putAll(task.join());
+		}
+		return result;
+	}
+
+	/**
+	 * @return The shard of a flat, picked by the hash of its name.
+	 */
+	private Shard shard(String flatName) {
+		int hash = flatName.hashCode();
+		hash ^= hash >>> 16;
+		return _shards[(hash & 0x7fffffff) % _shards.length];
+	}
+
+	/**
+	 * This FlatQuery abstract class is a query asked of the inventory of each flat.
+	 */
+	private abstract static class FlatQuery {
+		/**
+		 * @param flat The inventory of a flat.
+		 * @return The answer of the flat, empty if it has none.
+		 */
+		abstract List<String> ask(InventoryMan flat);
+	}
+
+	/**
+	 * This Shard class holds the inventories of some of the flats, guarded by its own lock.
+	 */
+	private static final class Shard {
+		private final Map<String, InventoryMan> _flats = new HashMap<String, InventoryMan>();
+
+		/**
+		 * Find the inventory of a flat, creating it if needed.
+		 * @param flatName The name of the flat.
+		 * @param storage How a new inventory keeps its items.
+		 * @return The inventory.
+		 */
+		synchronized InventoryMan flat(String flatName, Storage storage) {
+			InventoryMan flat = _flats.get(flatName);
+			if (flat == null) {
+				flat = storage.create(flatName);
+				_flats.put(flatName, flat);
+			}
+			return flat;
+		}
+
+		/**
+		 * @return A copy of the inventories of the flats by name, so they can be queried without the lock.
+		 */
+		synchronized Map<String, InventoryMan> flats() {
+			return new HashMap<String, InventoryMan>(_flats);
+		}
+	}
+}
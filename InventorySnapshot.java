@@ -0,0 +1,377 @@
+package inventoryman;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This InventorySnapshot class is a read-only copy of an inventory in a file, which is memory-mapped
+ * when opened, so it can answer getItemToDisplay and getAll at once after a restart instead of
+ * after every item has been added again. Items are only read from the file when a query touches them.
+ * <p>
+ * The file is columnar: a header, a dictionary of every distinct string (the end offset of each string,
+ * then their UTF-8 bytes), a column of fixed width per value of the items, holding dictionary ids or
+ * numbers, the rows of the items in each order of {@link State}, and a hash table from creator, title
+ * and format to row. A snapshot file is limited to 2GB.
+ *
+ * @see InventoryManImpl#writeSnapshot(Path)
+ */
+public final class InventorySnapshot {
+	
+	private static final int MAGIC = 0x494d534e; //"IMSN"
+	private static final int VERSION = 2;
+	private static final int HEADER_BYTES = 28;
+	private static final byte BOOK = 0;
+	private static final byte MUSIC = 1;
+	private static final int NO_STRING = -1;
+	
+	//The int columns, in the order they are in the file.
+	private static final int CREATOR = 0;
+	private static final int TITLE = 1;
+	private static final int RELEASE = 2;
+	private static final int ACQUISITION_DAY = 3;
+	private static final int OWNER = 4;
+	private static final int COST = 5;
+	private static final int FORMAT = 6;
+	private static final int PUBLISHER = 7;
+	private static final int INT_COLUMNS = 8;
+	
+	//Items are added to an inventory in batches of this many items.
+	private static final int BATCH_SIZE = 8192;
+	
+	private final ByteBuffer _buffer;
+	private final int _size;
+	private final String _flatName;
+	private final int _offsetsPosition;
+	private final int _stringsPosition;
+	private final int _typePosition;
+	private final int _columnsPosition;
+	private final int _centsPosition;
+	private final int _ordersPosition;
+	private final int _hashPosition;
+	private final int _hashMask;
+	
+	private InventorySnapshot(ByteBuffer buffer) throws IOException {
+		_buffer = buffer;
+		if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException("Not a snapshot of an inventory");
+		}
+		_size = buffer.getInt(8);
+		int stringCount = buffer.getInt(12);
+		int stringBytes = buffer.getInt(16);
+		int flatNameId = buffer.getInt(20);
+		int hashCapacity = buffer.getInt(24);
+		_offsetsPosition = HEADER_BYTES;
+		_stringsPosition = _offsetsPosition + 4 * (stringCount + 1);
+		_typePosition = _stringsPosition + stringBytes;
+		_columnsPosition = _typePosition + _size;
+		_centsPosition = _columnsPosition + 4 * INT_COLUMNS * _size;
+		_ordersPosition = _centsPosition + 8 * _size;
+		_hashPosition = _ordersPosition + 4 * State.values().length * _size;
+		_hashMask = hashCapacity - 1;
+		if (_hashPosition + 4L * hashCapacity != buffer.capacity()) {
+			throw new IOException("The snapshot of an inventory is damaged");
+		}
+		_flatName = string(flatNameId);
+	}
+	
+	/**
+	 * Open a snapshot by memory-mapping its file. Nothing but the header is read.
+	 * @param file The file of the snapshot.
+	 * @return The snapshot.
+	 * @throws IOException If the file can not be read or is not a snapshot.
+	 */
+	public static InventorySnapshot open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new InventorySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+	
+	/**
+	 * @return The number of items in the snapshot.
+	 */
+	public int size() {
+		return _size;
+	}
+	
+	/**
+	 * @return The name of the flat of the inventory.
+	 */
+	public String getFlatName() {
+		return _flatName;
+	}
+	
+	/**
+	 * Provide a string showing the details of the item with the specified details,
+	 * as {@link InventoryMan#getItemToDisplay(String, String, String)}.
+	 * @param creator The artist or author of the item
+	 * @param title The title of the item
+	 * @param formatStr The format of the item
+	 * @return A string for the details of the specified item, or "ERROR" if there is no such item.
+	 */
+	public String getItemToDisplay(String creator, String title, String formatStr) {
+		if (!ItemKey.isKey(creator, title, formatStr)) {
+			return "ERROR";
+		}
+		int slot = new ItemKey(creator, title, formatStr).spreadHash() & _hashMask;
+		while (true) {
+			int row = _buffer.getInt(_hashPosition + 4 * slot) - 1;
+			if (row < 0) {
+				return "ERROR";
+			}
+			if (string(column(TITLE, row)).equals(title) && string(column(CREATOR, row)).equals(creator)
+					&& string(column(FORMAT, row)).equals(formatStr)) {
+				return item(row).asString();
+			}
+			slot = (slot + 1) & _hashMask;
+		}
+	}
+	
+	/**
+	 * Return a list of of all items in the specified order as a list of strings,
+	 * as {@link InventoryMan#getAll(String)}.
+	 * @param order The order to list the items, either "Creator", "Title" or "Acquisition".
+	 * @return A list of strings providing the details of all items in the specified
+	 * order, or in the order they were added for other orders.
+	 */
+	public List<String> getAll(String order) {
+		List<String> result = new ArrayList<String>(_size);
+		State state = State.fromOrder(order);
+		for (int i = 0; i < _size; i++) {
+			int row = state == null ? i : _buffer.getInt(_ordersPosition + 4 * (state.ordinal() * _size + i));
+			result.add(item(row).asString());
+		}
+		return result;
+	}
+	
+	/**
+	 * Add every item of the snapshot to an inventory, in the order they were added to the
+	 * inventory of the snapshot. This can run in the background while the snapshot answers queries.
+	 * @param inventoryMan The inventory to add to.
+	 */
+	public void addTo(InventoryMan inventoryMan) {
+		List<ItemRecord> batch = new ArrayList<ItemRecord>(BATCH_SIZE);
+		for (int row = 0; row < _size; row++) {
+			batch.add(item(row).toRecord());
+			if (batch.size() == BATCH_SIZE) {
+				inventoryMan.addAll(batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			inventoryMan.addAll(batch);
+		}
+	}
+	
+	/**
+	 * Read an item from the file.
+	 * @param row The row of the item.
+	 * @return The item.
+	 */
+	private Item item(int row) {
+		String creator = string(column(CREATOR, row));
+		String title = string(column(TITLE, row));
+		String release = string(column(RELEASE, row));
+		int acquisitionDay = column(ACQUISITION_DAY, row);
+		String owner = string(column(OWNER, row));
+		String costStr = string(column(COST, row));
+		long costCents = _buffer.getLong(_centsPosition + 8 * row);
+		String formatStr = string(column(FORMAT, row));
+		if (_buffer.get(_typePosition + row) == BOOK) {
+			return new Book(creator, title, release, acquisitionDay, owner, costStr, costCents,
+					formatStr, string(column(PUBLISHER, row)));
+		}
+		return new Music(creator, title, release, acquisitionDay, owner, costStr, costCents,
+				formatStr);
+	}
+	
+	/**
+	 * @return The value of an int column for the row.
+	 */
+	private int column(int column, int row) {
+		return _buffer.getInt(_columnsPosition + 4 * (column * _size + row));
+	}
+	
+	/**
+	 * @return The string of the dictionary with the id, or null for NO_STRING.
+	 */
+	private String string(int id) {
+		if (id == NO_STRING) {
+			return null;
+		}
+		int start = _buffer.getInt(_offsetsPosition + 4 * id);
+		int end = _buffer.getInt(_offsetsPosition + 4 * (id + 1));
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = _buffer.get(_stringsPosition + start + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Write a snapshot of an inventory. The inventory must not change while it is written.
+	 * The file is only replaced once the whole snapshot is on disk.
+	 * @param inventoryMan The inventory.
+	 * @param file The file to write, replaced if it exists.
+	 * @throws IOException If the file can not be written or the snapshot would be larger than 2GB.
+	 */
+	static void write(InventoryManImpl inventoryMan, Path file) throws IOException {
+		//Number the items in the order they were added and number every distinct string.
+		List<Item> items = new ArrayList<Item>();
+		List<ItemRecord> records = new ArrayList<ItemRecord>();
+		Map<Integer, Integer> rowBySequence = new HashMap<Integer, Integer>();
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<byte[]> strings = new ArrayList<byte[]>();
+		int flatNameId = id(inventoryMan.getFlatName(), ids, strings);
+		for (Item item : inventoryMan.items()) {
+			ItemRecord record = item.toRecord();
+			rowBySequence.put(item._sequence, items.size());
+			items.add(item);
+			records.add(record);
+			String[] values = { record.getCreator(), record.getTitle(), record.getPublicationYear(),
+					record.getOwner(), record.getCostStr(), record.getFormatStr(),
+					record.getPublisher() };
+			for (String value : values) {
+				id(value, ids, strings);
+			}
+		}
+		int size = items.size();
+		long stringBytes = 0;
+		for (byte[] string : strings) {
+			stringBytes += string.length;
+		}
+		int hashCapacity = 2;
+		while (hashCapacity < 2 * size) {
+			hashCapacity *= 2;
+		}
+		long total = HEADER_BYTES + 4L * (strings.size() + 1) + stringBytes + size
+				+ (4L * INT_COLUMNS + 8 + 4L * State.values().length) * size + 4L * hashCapacity;
+		if (total > Integer.MAX_VALUE) {
+			throw new IOException("The inventory is too large for a snapshot");
+		}
+		
+		//Write a new file next to the old one and move it over the old one once it is on disk, so a crash
+		//leaves either the old snapshot or the new one whole. A snapshot still open keeps the old file.
+		Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		boolean moved = false;
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(size);
+				out.writeInt(strings.size());
+				out.writeInt((int) stringBytes);
+				out.writeInt(flatNameId);
+				out.writeInt(hashCapacity);
+				
+				//The dictionary, as the end offset of each string then the bytes of the strings.
+				int end = 0;
+				out.writeInt(0);
+				for (byte[] string : strings) {
+					end += string.length;
+					out.writeInt(end);
+				}
+				for (byte[] string : strings) {
+					out.write(string);
+				}
+				
+				//The columns.
+				for (Item item : items) {
+					out.writeByte(item.type() == ItemType.BOOK ? BOOK : MUSIC);
+				}
+				for (ItemRecord record : records) {
+					out.writeInt(ids.get(record.getCreator()));
+				}
+				for (ItemRecord record : records) {
+					out.writeInt(ids.get(record.getTitle()));
+				}
+				for (ItemRecord record : records) {
+					out.writeInt(idOrNone(record.getPublicationYear(), ids));
+				}
+				for (Item item : items) {
+					out.writeInt(item._acquisitionDay);
+				}
+				for (ItemRecord record : records) {
+					out.writeInt(ids.get(record.getOwner()));
+				}
+				for (ItemRecord record : records) {
+					out.writeInt(ids.get(record.getCostStr()));
+				}
+				for (ItemRecord record : records) {
+					out.writeInt(ids.get(record.getFormatStr()));
+				}
+				for (ItemRecord record : records) {
+					out.writeInt(idOrNone(record.getPublisher(), ids));
+				}
+				for (Item item : items) {
+					out.writeLong(item._costCents);
+				}
+				
+				//The rows in each order.
+				for (State state : State.values()) {
+					for (Item item : inventoryMan.items(state)) {
+						out.writeInt(rowBySequence.get(item._sequence));
+					}
+				}
+				
+				//The hash table of rows + 1, 0 for an empty slot.
+				int[] slots = new int[hashCapacity];
+				for (int row = 0; row < size; row++) {
+					int slot = items.get(row).key().spreadHash() & (hashCapacity - 1);
+					while (slots[slot] != 0) {
+						slot = (slot + 1) & (hashCapacity - 1);
+					}
+					slots[slot] = row + 1;
+				}
+				for (int slot : slots) {
+					out.writeInt(slot);
+				}
+				out.flush();
+				channel.force(true);
+			}
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			moved = true;
+		} finally {
+			if (!moved) {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+	
+	/**
+	 * Find the id of a string, adding it to the dictionary if it is new.
+	 * @return The id of the string, or NO_STRING for null.
+	 */
+	private static int id(String value, Map<String, Integer> ids, List<byte[]> strings) {
+		if (value == null) {
+			return NO_STRING;
+		}
+		Integer id = ids.get(value);
+		if (id == null) {
+			id = strings.size();
+			ids.put(value, id);
+			strings.add(value.getBytes(StandardCharsets.UTF_8));
+		}
+		return id;
+	}
+	
+	/**
+	 * @return The id of a string already in the dictionary, or NO_STRING for null.
+	 */
+	private static int idOrNone(String value, Map<String, Integer> ids) {
+		return value == null ? NO_STRING : ids.get(value);
+	}
+}
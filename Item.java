@@ -1,31 +1,36 @@
 package inventoryman;
-import java.util.ArrayList;
+import java.time.LocalDate;
 import java.util.Comparator;
-import java.util.List;
 
 /**
  * This Item abstract class provides some common fields and methods that need to be tracked
  * during the implementation of the InventoryMan. 
  * It has two subclasses: Book and Music
  * Fields include creator, title, publication year, 
- * acquisition year, owner, cost, format and type of item. It also includes a method to construct
- * a comparator according to different use. There will also be an abstract method "asString" as both 
- * subclasses Book and Music would use it differently.
+ * acquisition year, owner, cost, format and type of item. The acquisition date and the cost are also
+ * parsed once into numbers (days since 1970-01-01 and cents), so comparisons and sums never need
+ * to look at the strings again. It also includes a method to construct
+ * a comparator according to different use. There will also be an abstract method "appendTo", used by
+ * "asString", as both subclasses Book and Music would use it differently. The string of an item can be
+ * kept once made, until the item is changed. An item in an inventory is never changed: a new owner or
+ * cost makes a copy of the item, which replaces it in every index.
  * @author chenh
  *
  */
-public abstract class Item {
+public abstract class Item implements Cloneable {
 	
 	//Below are fields and states that need to be tracked.
+	//Creator, owner and format are shared through the pool of strings of the inventory once the item is in one.
 	protected String _creator;
 	protected String _title;
 	protected String _publicationYear; //or releaseDate
-	protected String _acquisitionDateStr;
 	protected String _owner;
 	protected String _costStr;
 	protected String _formatStr;
-	protected List<Item> _ItemList = new ArrayList<Item>();
-	protected String stateType;
+	protected int _acquisitionDay; //acquisition date as days since 1970-01-01
+	protected long _costCents; //cost in cents
+	protected int _sequence; //order in which the item was added to the inventory
+	private volatile String _rendered; //the string of asString once cached, null after the item changes
 	
 	
 	/**
@@ -43,68 +48,307 @@ public abstract class Item {
 	 * @throws Exception CostException and FormatException. Both are custom exceptions.
 	 */
 		public Item(String creator, String title, String publicationYear, String acquisitionDateStr, String owner, String costStr, String formatStr) throws Exception {
-		
-		int year = Integer.parseInt(acquisitionDateStr.substring(0, 3));
-		int month = Integer.parseInt(acquisitionDateStr.substring(5, 6));
-		int date = Integer.parseInt(acquisitionDateStr.substring(8, 9));
-		char symbol = costStr.charAt(0);
-		String value = costStr.substring(costStr.indexOf('.'), costStr.length()-1);
-		
-		//Below are conditions of two custom exceptions throwing.
-		
-		if(acquisitionDateStr.length() != 10 || acquisitionDateStr.charAt(4)!= '-' || acquisitionDateStr.charAt(7)!='-'
-				|| (year<0 || year>9999)||(month<0||month>99)||(date<0||date>99)) {
-			throw new FormatException("ERROR");
-		}
-		if(symbol!='$'||costStr.indexOf('.')<1||(value.length()!=2)) {
-			throw new CostException("ERROR");
-		}
+		this(creator, title, publicationYear, checkedEpochDay(acquisitionDateStr), owner,
+				costStr, checkedCents(costStr), formatStr);
+	}
+	
+	/**
+	 * Constructor creating an Item from values which have already been checked by {@link ItemValidator}.
+	 * 
+	 * @param acquisitionDay The acquisition date as days since 1970-01-01.
+	 * @param costCents The cost in cents.
+	 */
+	Item(String creator, String title, String publicationYear, int acquisitionDay,
+			String owner, String costStr, long costCents, String formatStr) {
 		_creator = creator;
 		_title = title;
 		_publicationYear = publicationYear;
 		_owner = owner;
-		_acquisitionDateStr = acquisitionDateStr;
 		_costStr = costStr;
 		_formatStr = formatStr;
+		_acquisitionDay = acquisitionDay;
+		_costCents = costCents;
+	}
+	
+	/**
+	 * @return The acquisition date as days since 1970-01-01.
+	 * @throws FormatException If the date is not in ISO8601 format or does not exist.
+	 */
+	private static int checkedEpochDay(String acquisitionDateStr) throws FormatException {
+		int day = ItemValidator.toEpochDay(acquisitionDateStr);
+		if (day == ItemValidator.INVALID_DAY) {
+			throw new FormatException("ERROR");
+		}
+		return day;
+	}
+	
+	/**
+	 * @return The cost in cents.
+	 * @throws CostException If the cost is not in the required format.
+	 */
+	private static long checkedCents(String costStr) throws CostException {
+		long cents = ItemValidator.toCents(costStr);
+		if (cents == ItemValidator.INVALID_COST) {
+			throw new CostException("ERROR");
+		}
+		return cents;
+	}
+	
+	/**
+	 * @return The creator of the item.
+	 */
+	String creator() {
+		return _creator;
+	}
+	
+	/**
+	 * @return The owner of the item.
+	 */
+	String owner() {
+		return _owner;
 	}
 	
+	/**
+	 * @return The format of the item.
+	 */
+	String format() {
+		return _formatStr;
+	}
+	
+	/**
+	 * Take the strings which repeat across items from the pool of an inventory, so each value is held
+	 * once however many items of the inventory have it. Must be called before the item is shared with readers.
+	 * @param strings The pool of the inventory.
+	 */
+	void share(StringPool strings) {
+		_creator = strings.shared(_creator);
+		_owner = strings.shared(_owner);
+		_formatStr = strings.shared(_formatStr);
+	}
+	
+	/**
+	 * @param owner The new owner, from the pool of the inventory.
+	 * @return A copy of the item given to another owner, added to the inventory at the same time as the item.
+	 */
+	Item withOwner(String owner) {
+		Item changed = copy();
+		changed._owner = owner;
+		return changed;
+	}
+	
+	/**
+	 * @param costStr The new cost, already checked by {@link ItemValidator}.
+	 * @param costCents The new cost in cents.
+	 * @return A copy of the item with another cost, added to the inventory at the same time as the item.
+	 */
+	Item withCost(String costStr, long costCents) {
+		Item changed = copy();
+		changed._costStr = costStr;
+		changed._costCents = costCents;
+		return changed;
+	}
+	
+	/**
+	 * @return A copy of the item with every value, without its kept string.
+	 */
+	private Item copy() {
+		try {
+			Item copy = (Item) clone();
+			copy._rendered = null;
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+	
+	/**
+	 * @return The acquisition date of the item in ISO8601 format. Only valid dates are accepted, so
+	 * this is the same string the item was created with.
+	 */
+	String acquisitionDateStr() {
+		StringBuilder out = new StringBuilder(10);
+		appendAcquisitionDate(out);
+		return out.toString();
+	}
+	
+	/**
+	 * Append the acquisition date of the item in ISO8601 format, without making a string of it.
+	 * @param out Where to append the date.
+	 */
+	void appendAcquisitionDate(StringBuilder out) {
+		LocalDate date = LocalDate.ofEpochDay(_acquisitionDay);
+		appendDigits(out, date.getYear(), 4);
+		out.append('-');
+		appendDigits(out, date.getMonthValue(), 2);
+		out.append('-');
+		appendDigits(out, date.getDayOfMonth(), 2);
+	}
+	
+	/**
+	 * Append a number padded with zeros to a number of digits.
+	 */
+	private static void appendDigits(StringBuilder out, int value, int digits) {
+		for (int unit = digits == 4 ? 1000 : 10; unit > 1 && value < unit; unit /= 10) {
+			out.append('0');
+		}
+		out.append(value);
+	}
+	
+	/**
+	 * @return The type of the item, either book or music. The type is the class of the item, so
+	 * it takes no room in the item.
+	 */
+	abstract ItemType type();
+	
 	/**
 	 * An abstract method since it is used in both book and music and have different implementation.
+	 * Appends the display string of the item to a buffer of the caller, so no string is made for it.
 	 * 
+	 * @param out Where to append, according to the type of item (either book or music), the display string.
+	 */
+	abstract void appendTo(StringBuilder out);
+	
+	/**
+	 * Appends the line of the item for the flat report, according to the type of item.
+	 * @param out Where to append the line.
+	 * @see InventoryMan#getFlatReport()
+	 */
+	abstract void appendReportLineTo(StringBuilder out);
+	
+	/**
 	 * @return A string, according to the type of item (either book or music) to return different display string.
 	 */
-	abstract String asString();
+	public String asString() {
+		StringBuilder out = new StringBuilder(64 + _title.length());
+		appendTo(out);
+		return out.toString();
+	}
 	
 	/**
-	 * 
+	 * @return The same string as {@link #asString()}, kept after the first time so listing the item
+	 * again makes no new string. The string is made again after the item is changed.
+	 */
+	String renderedString() {
+		//An item in an inventory is never changed, so whichever thread keeps the string keeps the one
+		//of the item, and threads racing here at worst make it once more each.
+		String rendered = _rendered;
+		if (rendered == null) {
+			rendered = asString();
+			_rendered = rendered;
+		}
+		return rendered;
+	}
+	
+	/**
+	 * Drop the kept string of the item. Must be called whenever a value of the item changes, which
+	 * only an item not yet in an inventory may do.
+	 */
+	void changed() {
+		_rendered = null;
+	}
+	
+	/**
+	 * @return A string of the item for the flat report, according to the type of item.
+	 * @see InventoryMan#getFlatReport()
+	 */
+	String asReportLine() {
+		StringBuilder out = new StringBuilder(32 + _title.length());
+		appendReportLineTo(out);
+		return out.toString();
+	}
+	
+	/**
+	 * @return The year the item was acquired.
+	 */
+	int acquisitionYear() {
+		return LocalDate.ofEpochDay(_acquisitionDay).getYear();
+	}
+	
+	/**
+	 * @return A record with the values of the item, as they were given to the inventory.
+	 */
+	abstract ItemRecord toRecord();
+	
+	/**
+	 * @return The key of the item made of its creator, title and format.
+	 */
+	ItemKey key() {
+		return new ItemKey(creator(), _title, format());
+	}
+	
+	/**
+	 * Construct a comparator for the specified state. Items which are equal in the state are
+	 * ordered by the sequence in which they were added to the inventory, so no two items
+	 * of an inventory ever compare as equal and the order is stable.
 	 * @param state An Enum type to switch the state to make different comparisons.
 	 * @return a Comparator<Item> to make comparisons according to different state.
 	 */
-	public Comparator<Item> sorting(State state) {
+	public static Comparator<Item> sorting(State state) {
 		switch(state) {
 		case CREATOR:
 			return new Comparator<Item>(){
 				@Override
 				public int compare(Item I1, Item I2) {
-					return I1._creator.compareTo(I2._creator);
+					return bySequence(compareShared(I1._creator, I2._creator), I1, I2);
 				}
 			};
 		case TITLE:
 			return new Comparator<Item>(){
 				@Override
 				public int compare(Item I1, Item I2) {
-					return I1._title.compareTo(I2._title);
+					return bySequence(I1._title.compareTo(I2._title), I1, I2);
 				}
 			};
 		case ACQUISITION:
 			return new Comparator<Item>(){
 				@Override
 				public int compare(Item I1, Item I2) {
-					return I1._acquisitionDateStr.compareTo(I2._acquisitionDateStr);
+					return bySequence(Integer.compare(I1._acquisitionDay, I2._acquisitionDay), I1, I2);
+				}
+			};
+		case OWNER:
+			//Owner first, then books before music, then creator and then title.
+			return new Comparator<Item>(){
+				@Override
+				public int compare(Item I1, Item I2) {
+					int result = compareShared(I1._owner, I2._owner);
+					if (result == 0) {
+						result = I1.type().compareTo(I2.type());
+					}
+					if (result == 0) {
+						result = compareShared(I1._creator, I2._creator);
+					}
+					if (result == 0) {
+						result = I1._title.compareTo(I2._title);
+					}
+					return bySequence(result, I1, I2);
 				}
 			};
 			default:
 				return null;
 		}
 	}
+	
+	/**
+	 * Compare two strings in alphabetical order. Equal strings shared through a pool are
+	 * the same string, so they are found equal without looking at the characters.
+	 */
+	static int compareShared(String string1, String string2) {
+		if (string1 == string2) {
+			return 0;
+		}
+		return string1.compareTo(string2);
+	}
+	
+	/**
+	 * Break a tie between two items by the sequence in which they were added.
+	 * @param result The result of comparing the items by state.
+	 * @return The result if it is not a tie, otherwise the comparison of the sequence numbers.
+	 */
+	private static int bySequence(int result, Item I1, Item I2) {
+		if (result != 0) {
+			return result;
+		}
+		return Integer.compare(I1._sequence, I2._sequence);
+	}
 }
@@ -0,0 +1,98 @@
+package inventoryman;
+
+/**
+ * This ItemKey class is the composite key (creator, title, format) which identifies
+ * an item in the inventory. There can not be two items with the same key, so it is
+ * used to index the items for getItemToDisplay and to reject duplicates on add.
+ * A key needs all three values, so callers check them with {@link #isKey(String, String, String)} first.
+ *
+ */
+final class ItemKey {
+
+	private final String _creator;
+	private final String _title;
+	private final String _formatStr;
+	private final int _hash;
+
+	/**
+	 * Check the values of a key.
+	 * @param creator The creator of the item.
+	 * @param title The title of the item.
+	 * @param formatStr The format of the item.
+	 * @return true if none of the values is null.
+	 */
+	static boolean isKey(String creator, String title, String formatStr) {
+		return creator != null && title != null && formatStr != null;
+	}
+
+	/**
+	 * Construct the key of an item. None of the values may be null.
+	 * @param creator The creator of the item.
+	 * @param title The title of the item.
+	 * @param formatStr The format of the item.
+	 */
+	ItemKey(String creator, String title, String formatStr) {
+		_creator = creator;
+		_title = title;
+		_formatStr = formatStr;
+		int hash = creator.hashCode();
+		hash = 31 * hash + title.hashCode();
+		hash = 31 * hash + formatStr.hashCode();
+		_hash = hash;
+	}
+
+	/**
+	 * @return The creator of the key.
+	 */
+	String creator() {
+		return _creator;
+	}
+
+	/**
+	 * @return The title of the key.
+	 */
+	String title() {
+		return _title;
+	}
+
+	/**
+	 * @return The format of the key.
+	 */
+	String formatStr() {
+		return _formatStr;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof ItemKey)) {
+			return false;
+		}
+		ItemKey key = (ItemKey) other;
+		return _hash == key._hash && _creator.equals(key._creator) && _title.equals(key._title)
+				&& _formatStr.equals(key._formatStr);
+	}
+
+	@Override
+	public int hashCode() {
+		return _hash;
+	}
+
+	/**
+	 * @return The hash code with its high bits spread into the low bits, so a slot of a hash table
+	 * taken from the low bits depends on all of them.
+	 */
+	int spreadHash() {
+		return _hash ^ (_hash >>> 16);
+	}
+
+	/**
+	 * @return A string of the key in the form creator "|" title "|" format.
+	 */
+	@Override
+	public String toString() {
+		return _creator + "|" + _title + "|" + _formatStr;
+	}
+}
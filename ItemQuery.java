@@ -0,0 +1,213 @@
+package inventoryman;
+
+/**
+ * This ItemQuery class describes which items to find with {@link InventoryMan#find(ItemQuery)}:
+ * filters on the values of the items, the order to list them in and the most to list. Each method
+ * sets one part of the query and returns the query, so a query is written as one expression:
+ * <pre>
+ * new ItemQuery().owner("Chris").format("CD").acquiredBetween("2015-01-01", "2018-12-31")
+ *         .costBetween(null, "$29.99").orderBy("Title").limit(10)
+ * </pre>
+ * An item must match every filter set. A filter with a date or cost which is not valid matches no items.
+ *
+ */
+public final class ItemQuery {
+	private String _creator;
+	private String _owner;
+	private String _formatStr;
+	private ItemType _type;
+	private String _fromDateStr;
+	private String _toDateStr;
+	private String _fromCostStr;
+	private String _toCostStr;
+	private String _order;
+	private int _limit = Integer.MAX_VALUE;
+
+	/**
+	 * @param creator The artist or author of the items.
+	 * @return This query.
+	 */
+	public ItemQuery creator(String creator) {
+		_creator = creator;
+		return this;
+	}
+
+	/**
+	 * @param owner The owner of the items.
+	 * @return This query.
+	 */
+	public ItemQuery owner(String owner) {
+		_owner = owner;
+		return this;
+	}
+
+	/**
+	 * @param formatStr The format of the items, such as "CD" or "Paperback".
+	 * @return This query.
+	 */
+	public ItemQuery format(String formatStr) {
+		_formatStr = formatStr;
+		return this;
+	}
+
+	/**
+	 * @param type The type of the items, book or music.
+	 * @return This query.
+	 */
+	public ItemQuery type(ItemType type) {
+		_type = type;
+		return this;
+	}
+
+	/**
+	 * @param fromDateStr The first date of acquisition to include (ISO8601 format), or null for no first date.
+	 * @param toDateStr The last date of acquisition to include (ISO8601 format), or null for no last date.
+	 * @return This query.
+	 */
+	public ItemQuery acquiredBetween(String fromDateStr, String toDateStr) {
+		_fromDateStr = fromDateStr;
+		_toDateStr = toDateStr;
+		return this;
+	}
+
+	/**
+	 * @param fromCostStr The lowest cost to include (format "$" dollars "." cents), or null for no lowest cost.
+	 * @param toCostStr The highest cost to include (format "$" dollars "." cents), or null for no highest cost.
+	 * @return This query.
+	 */
+	public ItemQuery costBetween(String fromCostStr, String toCostStr) {
+		_fromCostStr = fromCostStr;
+		_toCostStr = toCostStr;
+		return this;
+	}
+
+	/**
+	 * @param order The order to list the items, either "Creator", "Title" or "Acquisition",
+	 * or the order they were added for other orders.
+	 * @return This query.
+	 */
+	public ItemQuery orderBy(String order) {
+		_order = order;
+		return this;
+	}
+
+	/**
+	 * @param limit The most items to list.
+	 * @return This query.
+	 */
+	public ItemQuery limit(int limit) {
+		_limit = limit;
+		return this;
+	}
+
+	/**
+	 * @return The order to list the items, or null for the order they were added.
+	 */
+	State order() {
+		return State.fromOrder(_order);
+	}
+
+	/**
+	 * @return The most items to list.
+	 */
+	int limit() {
+		return _limit;
+	}
+
+	/**
+	 * @param strings The pool of strings of the inventory to search.
+	 * @return The filters of the query with the strings and values checked, ready to match items.
+	 */
+	Filter filter(StringPool strings) {
+		return new Filter(this, strings);
+	}
+
+	/**
+	 * This Filter class is the filters of a query as ids in the pool of strings of an inventory, epoch days
+	 * and cents, so matching a row compares numbers, and matching an item compares strings shared through
+	 * the pool, which are mostly the same string. A string which is not in the pool is not the value of any
+	 * item, so the filter then matches nothing, as it does for a date or cost which is not valid.
+	 */
+	static final class Filter {
+		static final int ANY = Integer.MIN_VALUE; //the id of a string which is not filtered on
+
+		final String _creator; //null if not filtered on
+		final String _owner;
+		final String _formatStr;
+		final int _creatorId;
+		final int _ownerId;
+		final int _formatId;
+		final int _type; //the ordinal of the type, or ANY
+		final int _fromDay;
+		final int _toDay;
+		final long _fromCents;
+		final long _toCents;
+		final boolean _none; //true if no item can match
+
+		/**
+		 * Check the filters of a query.
+		 * @param query The query.
+		 * @param strings The pool of strings of the inventory to search.
+		 */
+		Filter(ItemQuery query, StringPool strings) {
+			_creator = query._creator;
+			_owner = query._owner;
+			_formatStr = query._formatStr;
+			_creatorId = id(query._creator, strings);
+			_ownerId = id(query._owner, strings);
+			_formatId = id(query._formatStr, strings);
+			_type = query._type == null ? ANY : query._type.ordinal();
+			_fromDay = query._fromDateStr == null ? Integer.MIN_VALUE : ItemValidator.toEpochDay(query._fromDateStr);
+			_toDay = query._toDateStr == null ? Integer.MAX_VALUE : ItemValidator.toEpochDay(query._toDateStr);
+			_fromCents = query._fromCostStr == null ? Long.MIN_VALUE : ItemValidator.toCents(query._fromCostStr);
+			_toCents = query._toCostStr == null ? Long.MAX_VALUE : ItemValidator.toCents(query._toCostStr);
+			_none = _creatorId == StringPool.NO_ID || _ownerId == StringPool.NO_ID || _formatId == StringPool.NO_ID
+					|| (query._fromDateStr != null && _fromDay == ItemValidator.INVALID_DAY)
+					|| (query._toDateStr != null && _toDay == ItemValidator.INVALID_DAY)
+					|| (query._fromCostStr != null && _fromCents == ItemValidator.INVALID_COST)
+					|| (query._toCostStr != null && _toCents == ItemValidator.INVALID_COST)
+					|| _fromDay > _toDay || _fromCents > _toCents;
+		}
+
+		/**
+		 * @return true if the filter is on a range of dates of acquisition.
+		 */
+		boolean hasDays() {
+			return _fromDay != Integer.MIN_VALUE || _toDay != Integer.MAX_VALUE;
+		}
+
+		/**
+		 * @param item An item.
+		 * @return true if the item matches every filter.
+		 */
+		boolean matches(Item item) {
+			return (_creator == null || _creator.equals(item._creator)) && (_owner == null || _owner.equals(item._owner))
+					&& (_formatStr == null || _formatStr.equals(item._formatStr))
+					&& (_type == ANY || _type == item.type().ordinal())
+					&& item._acquisitionDay >= _fromDay && item._acquisitionDay <= _toDay
+					&& item._costCents >= _fromCents && item._costCents <= _toCents;
+		}
+
+		/**
+		 * @param columns The columns of a row.
+		 * @param row The row of an item.
+		 * @return true if the item matches every filter.
+		 */
+		boolean matches(Columns columns, int row) {
+			if ((_creatorId != ANY && _creatorId != columns.creator(row)) || (_ownerId != ANY && _ownerId != columns.owner(row))
+					|| (_formatId != ANY && _formatId != columns.format(row)) || (_type != ANY && _type != columns.type(row))) {
+				return false;
+			}
+			int day = columns.day(row);
+			long cents = columns.cents(row);
+			return day >= _fromDay && day <= _toDay && cents >= _fromCents && cents <= _toCents;
+		}
+
+		/**
+		 * @return The id of a string to filter on, ANY for null, or NO_ID if it is not in the pool.
+		 */
+		private static int id(String string, StringPool strings) {
+			return string == null ? ANY : strings.find(string);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package inventoryman;
+
+/**
+ * This ItemRecord class holds the values of one item as they are given to the inventory,
+ * before they are checked. It is used to add many items at once.
+ *
+ * @see InventoryMan#addAll(java.util.List)
+ */
+public final class ItemRecord {
+	
+	private final ItemType _type;
+	private final String _creator;
+	private final String _title;
+	private final String _publicationYear; //or releaseDate
+	private final String _acquisitionDateStr;
+	private final String _owner;
+	private final String _costStr;
+	private final String _formatStr;
+	private final String _publisher; //only for books
+	
+	private ItemRecord(ItemType type, String creator, String title, String publicationYear, String acquisitionDateStr,
+			String owner, String costStr, String formatStr, String publisher) {
+		_type = type;
+		_creator = creator;
+		_title = title;
+		_publicationYear = publicationYear;
+		_acquisitionDateStr = acquisitionDateStr;
+		_owner = owner;
+		_costStr = costStr;
+		_formatStr = formatStr;
+		_publisher = publisher;
+	}
+	
+	/**
+	 * Create a record of a book, with the same values as {@link InventoryMan#addBook}.
+	 * @param author The author of the book
+	 * @param title The title of the book
+	 * @param publicationYear The year the book was published (String with 4 digits)
+	 * @param publisher The publisher
+	 * @param acquisitionDateStr The date the book was acquired (ISO8601 format)
+	 * @param owner The owner of the book 
+	 * @param costStr The cost of the book
+	 * @param formatStr The format of the book, either "Hardcover" or "Paperback"
+	 * @return The record of the book.
+	 */
+	public static ItemRecord book(String author, String title, String publicationYear, String publisher,
+			String acquisitionDateStr, String owner, String costStr, String formatStr) {
+		return new ItemRecord(ItemType.BOOK, author, title, publicationYear, acquisitionDateStr, owner, costStr,
+				formatStr, publisher);
+	}
+	
+	/**
+	 * Create a record of music, with the same values as {@link InventoryMan#addMusic}.
+	 * @param artist The artist who made the music
+	 * @param title The title of the musical piece
+	 * @param releaseDateStr The date the piece was released (ISO8601 format)
+	 * @param acquisitionDateStr The date the music was acquired (ISO8601 format)
+	 * @param owner The owner of the music
+	 * @param costStr The cost of the music
+	 * @param formatStr The format of the music, either "CD" or "LP"
+	 * @return The record of the music.
+	 */
+	public static ItemRecord music(String artist, String title, String releaseDateStr, String acquisitionDateStr,
+			String owner, String costStr, String formatStr) {
+		return new ItemRecord(ItemType.MUSIC, artist, title, releaseDateStr, acquisitionDateStr, owner, costStr,
+				formatStr, null);
+	}
+	
+	/**
+	 * Check the record and create the item it describes.
+	 * @return The item, or null if the record is not valid.
+	 * @see #validate()
+	 */
+	Item toItem() {
+		int acquisitionDay = ItemValidator.toEpochDay(_acquisitionDateStr);
+		long costCents = ItemValidator.toCents(_costStr);
+		if (acquisitionDay == ItemValidator.INVALID_DAY || costCents == ItemValidator.INVALID_COST
+				|| _owner == null || !ItemKey.isKey(_creator, _title, _formatStr)) {
+			return null;
+		}
+		if (_type == ItemType.BOOK) {
+			return new Book(_creator, _title, _publicationYear, acquisitionDay, _owner,
+					_costStr, costCents, _formatStr, _publisher);
+		}
+		return new Music(_creator, _title, _publicationYear, acquisitionDay, _owner,
+				_costStr, costCents, _formatStr);
+	}
+	
+	/**
+	 * @return VALID, or the first value of the record which is wrong.
+	 */
+	public ValidationResult validate() {
+		if (!ItemKey.isKey(_creator, _title, _formatStr)) {
+			return ValidationResult.BAD_KEY;
+		}
+		return ItemValidator.validate(_acquisitionDateStr, _owner, _costStr);
+	}
+	
+	/**
+	 * @return The type of the item.
+	 */
+	public ItemType getType() {
+		return _type;
+	}
+	
+	/**
+	 * @return The creator of the item.
+	 */
+	public String getCreator() {
+		return _creator;
+	}
+	
+	/**
+	 * @return The title of the item.
+	 */
+	public String getTitle() {
+		return _title;
+	}
+	
+	/**
+	 * @return The publication year of a book or the release date of music.
+	 */
+	public String getPublicationYear() {
+		return _publicationYear;
+	}
+	
+	/**
+	 * @return The date the item was acquired.
+	 */
+	public String getAcquisitionDateStr() {
+		return _acquisitionDateStr;
+	}
+	
+	/**
+	 * @return The owner of the item.
+	 */
+	public String getOwner() {
+		return _owner;
+	}
+	
+	/**
+	 * @return The cost of the item.
+	 */
+	public String getCostStr() {
+		return _costStr;
+	}
+	
+	/**
+	 * @return The format of the item.
+	 */
+	public String getFormatStr() {
+		return _formatStr;
+	}
+	
+	/**
+	 * @return The publisher of a book, or null for music.
+	 */
+	public String getPublisher() {
+		return _publisher;
+	}
+}
@@ -0,0 +1,10 @@
+package inventoryman;
+
+/**
+ * An enum ItemType provides constants for the types of items in the inventory,
+ * either a book or music.
+ *
+ */
+public enum ItemType {
+	BOOK, MUSIC;
+}
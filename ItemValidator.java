@@ -0,0 +1,158 @@
+package inventoryman;
+
+/**
+ * This ItemValidator class checks the date and cost of an item before the item is created.
+ * Unlike the Item constructor it never throws and does not allocate, so rejecting a bad
+ * row is as cheap as accepting a good one. Dates must be in ISO8601 format (yyyy-mm-dd) and
+ * exist, costs must be "$" dollars "." cents, where dollars is a sequence of 1 or more digits
+ * and cents is always 2 digits, and every item must have an owner, which may be blank.
+ *
+ */
+public final class ItemValidator {
+	
+	/**
+	 * Returned by {@link #toEpochDay(String)} when the date is not valid.
+	 */
+	public static final int INVALID_DAY = Integer.MIN_VALUE;
+	
+	/**
+	 * Returned by {@link #toCents(String)} when the cost is not valid.
+	 */
+	public static final long INVALID_COST = -1;
+	
+	//Dollars with more digits than this could overflow a long of cents.
+	private static final int MAX_DOLLAR_DIGITS = 16;
+	
+	private ItemValidator() {
+	}
+	
+	/**
+	 * Check the acquisition date and the cost of an item.
+	 * @param acquisitionDateStr The date the item was acquired (ISO8601 format)
+	 * @param costStr The cost of the item (format "$" dollars "." cents)
+	 * @return VALID, or the first value which is wrong.
+	 */
+	public static ValidationResult validate(String acquisitionDateStr, String costStr) {
+		if (toEpochDay(acquisitionDateStr) == INVALID_DAY) {
+			return ValidationResult.BAD_DATE;
+		}
+		if (toCents(costStr) == INVALID_COST) {
+			return ValidationResult.BAD_COST;
+		}
+		return ValidationResult.VALID;
+	}
+	
+	/**
+	 * Check the acquisition date, the owner and the cost of an item to add. The owner may be blank,
+	 * as it always could, but must be given.
+	 * @param acquisitionDateStr The date the item was acquired (ISO8601 format)
+	 * @param owner The owner of the item
+	 * @param costStr The cost of the item (format "$" dollars "." cents)
+	 * @return VALID, or the first value which is wrong.
+	 */
+	public static ValidationResult validate(String acquisitionDateStr, String owner, String costStr) {
+		ValidationResult result = validate(acquisitionDateStr, costStr);
+		if (result == ValidationResult.VALID && owner == null) {
+			return ValidationResult.BAD_OWNER;
+		}
+		return result;
+	}
+	
+	/**
+	 * Check the new owner of an item being transferred. An item may have been added with a blank owner,
+	 * but is only ever given to a named one.
+	 * @param owner The new owner.
+	 * @return true if the owner is a name which is not blank.
+	 */
+	public static boolean isOwner(String owner) {
+		return owner != null && !owner.trim().isEmpty();
+	}
+	
+	/**
+	 * Convert a date in ISO8601 format (yyyy-mm-dd) to the number of days since 1970-01-01.
+	 * @param dateStr The date.
+	 * @return The number of days since 1970-01-01, negative for earlier dates, or INVALID_DAY
+	 * if the date is not in ISO8601 format or does not exist.
+	 */
+	public static int toEpochDay(String dateStr) {
+		if (dateStr == null || dateStr.length() != 10 || dateStr.charAt(4) != '-' || dateStr.charAt(7) != '-') {
+			return INVALID_DAY;
+		}
+		int year = digits(dateStr, 0, 4);
+		int month = digits(dateStr, 5, 7);
+		int date = digits(dateStr, 8, 10);
+		if (year < 0 || month < 1 || month > 12 || date < 1 || date > daysInMonth(year, month)) {
+			return INVALID_DAY;
+		}
+		
+		//Count days in whole 400 year eras from 0000-03-01, so leap days come at the end of each year.
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + date - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+	
+	/**
+	 * Convert a cost in the format "$" dollars "." cents to a number of cents.
+	 * @param costStr The cost.
+	 * @return The cost in cents, or INVALID_COST if the cost is not in the required format.
+	 */
+	public static long toCents(String costStr) {
+		if (costStr == null) {
+			return INVALID_COST;
+		}
+		int point = costStr.length() - 3;
+		if (point < 2 || point > MAX_DOLLAR_DIGITS + 1 || costStr.charAt(0) != '$' || costStr.charAt(point) != '.') {
+			return INVALID_COST;
+		}
+		long dollars = 0;
+		for (int i = 1; i < point; i++) {
+			char digit = costStr.charAt(i);
+			if (digit < '0' || digit > '9') {
+				return INVALID_COST;
+			}
+			dollars = dollars * 10 + (digit - '0');
+		}
+		int cents = digits(costStr, point + 1, point + 3);
+		if (cents < 0) {
+			return INVALID_COST;
+		}
+		return dollars * 100 + cents;
+	}
+	
+	/**
+	 * Read a number made only of digits.
+	 * @return The number, or -1 if any character is not a digit.
+	 */
+	private static int digits(String str, int begin, int end) {
+		int result = 0;
+		for (int i = begin; i < end; i++) {
+			char digit = str.charAt(i);
+			if (digit < '0' || digit > '9') {
+				return -1;
+			}
+			result = result * 10 + (digit - '0');
+		}
+		return result;
+	}
+	
+	/**
+	 * @return The number of days in the month of the year.
+	 */
+	private static int daysInMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+			return leap ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package inventoryman;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This LineIterator abstract class is an iterator over the lines of a query which renders each
+ * line only when it is asked for, so a result can be written out without ever being held whole.
+ * Subclasses provide the next line, or null when there are no more.
+ *
+ */
+abstract class LineIterator implements Iterator<String> {
+	private String _next;
+	private boolean _done;
+
+	/**
+	 * @return The next line, or null when there are no more lines.
+	 */
+	protected abstract String nextLine();
+
+	@Override
+	public boolean hasNext() {
+		if (_next == null && !_done) {
+			_next = nextLine();
+			_done = _next == null;
+		}
+		return _next != null;
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String line = _next;
+		_next = null;
+		return line;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Read all lines of an iterator into a list.
+	 * @param lines The lines.
+	 * @return The list of lines.
+	 */
+	static List<String> toList(Iterator<String> lines) {
+		List<String> result = new ArrayList<String>();
+		while (lines.hasNext()) {
+			result.add(lines.next());
+		}
+		return result;
+	}
+}
@@ -23,15 +23,48 @@ public class Music extends Item {
 	public Music(String creator, String title, String releaseDate, String acquisitionDateStr,
 			String owner, String costStr, String formatStr) throws Exception {
 		super(creator, title, releaseDate, acquisitionDateStr, owner, costStr, formatStr);
-		stateType = "Music";
 	}
 	
 	/**
-	 * @return A string displaying of the book. 
+	 * Construct a music object from values which have already been checked by {@link ItemValidator}.
 	 */
-	public String asString() {
-		return ("'" + _title + "' by " + _creator + ", " + _publicationYear + ". (" + 
-	_formatStr +  ", " + _owner + ", " +  _acquisitionDateStr + ", " + _costStr + ")");
+	Music(String creator, String title, String releaseDate, int acquisitionDay,
+			String owner, String costStr, long costCents, String formatStr) {
+		super(creator, title, releaseDate, acquisitionDay, owner, costStr, costCents, formatStr);
+	}
+	
+	/**
+	 * @return MUSIC.
+	 */
+	ItemType type() {
+		return ItemType.MUSIC;
+	}
+	
+	/**
+	 * Append a string displaying of the music. 
+	 * @param out Where to append the string.
+	 */
+	void appendTo(StringBuilder out) {
+		out.append('\'').append(_title).append("' by ").append(creator()).append(", ").append(_publicationYear)
+				.append(". (").append(format()).append(", ").append(owner()).append(", ");
+		appendAcquisitionDate(out);
+		out.append(", ").append(_costStr).append(')');
+	}
+	
+	/**
+	 * Append the line of the music for the flat report.
+	 * @param out Where to append the line.
+	 */
+	void appendReportLineTo(StringBuilder out) {
+		out.append(owner()).append(": '").append(_title).append("' by ").append(creator()).append(" (")
+				.append(format()).append(')');
+	}
+	
+	/**
+	 * @return A record with the values of the music.
+	 */
+	ItemRecord toRecord() {
+		return ItemRecord.music(creator(), _title, _publicationYear, acquisitionDateStr(), owner(), _costStr, format());
 	}
 	
 }
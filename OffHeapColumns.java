@@ -0,0 +1,199 @@
+package inventoryman;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This OffHeapColumns class holds the values of the items outside the heap, in direct buffers,
+ * so the garbage collector never has to trace or copy them however many items there are.
+ * Each item is a record of fixed width in a chunk of records, and its title, release date and
+ * cost as given are kept as the length then the UTF-8 bytes in a chunk of strings, referred to
+ * by chunk and offset, from the record for the title and release date.
+ * <p>
+ * Chunks are only ever added, never copied, so appending a row costs the same however many
+ * rows there are. The owner, the cost in cents and the reference to the cost as given change,
+ * so they are kept on the heap in chunks of longs and ints which are copied when they change,
+ * see {@link Columns}. A new cost is appended as a new string, leaving the old one in its chunk
+ * until the inventory copies its items into new columns, see {@link ColumnarInventoryMan}.
+ * The chunks are shared with the copies made when an item changes, and their memory is released
+ * when the columns and their copies are garbage collected.
+ *
+ */
+final class OffHeapColumns extends Columns {
+	private static final int ROWS_PER_CHUNK = 1 << 16;
+	private static final int STRING_CHUNK_BYTES = 1 << 24;
+	private static final long NO_STRING = -1;
+
+	//The fields of a record, by offset. The longs come first and a record is a multiple of 8 bytes,
+	//so in a chunk, which starts on a page, no long ever straddles two words.
+	private static final int TITLE = 0;
+	private static final int RELEASE = 8;
+	private static final int TYPE = 16;
+	private static final int CREATOR = 20;
+	private static final int FORMAT = 24;
+	private static final int PUBLISHER = 28;
+	private static final int DAY = 32;
+	private static final int ROW_BYTES = 40;
+
+	private final Chunks _chunks = new Chunks();
+	//The references to the costs as given. The array of chunks is replaced when a chunk is added.
+	private volatile long[][] _costs = new long[0][];
+
+	/**
+	 * Create empty columns.
+	 * @param strings The pool of strings of the inventory.
+	 */
+	OffHeapColumns(StringPool strings) {
+		super(strings);
+	}
+
+	@Override
+	Columns append(int row, ItemRecord record, int acquisitionDay, long costCents) {
+		int chunk = row / ROWS_PER_CHUNK;
+		if (chunk == _chunks._rows.length) {
+			ByteBuffer[] chunks = Arrays.copyOf(_chunks._rows, chunk + 1);
+			chunks[chunk] = ByteBuffer.allocateDirect(ROWS_PER_CHUNK * ROW_BYTES);
+			_chunks._rows = chunks;
+		}
+		ByteBuffer buffer = _chunks._rows[chunk];
+		int at = (row % ROWS_PER_CHUNK) * ROW_BYTES;
+		buffer.put(at + TYPE, (byte) record.getType().ordinal());
+		buffer.putInt(at + CREATOR, strings().id(record.getCreator()));
+		appendChanging(row, strings().id(record.getOwner()), costCents);
+		buffer.putInt(at + FORMAT, strings().id(record.getFormatStr()));
+		buffer.putInt(at + PUBLISHER, strings().id(record.getPublisher()));
+		buffer.putInt(at + DAY, acquisitionDay);
+		buffer.putLong(at + TITLE, putString(record.getTitle()));
+		buffer.putLong(at + RELEASE, putString(record.getPublicationYear()));
+		long[][] costs = _costs;
+		if (row / CHUNK_ROWS == costs.length) {
+			costs = Arrays.copyOf(costs, costs.length + 1);
+			costs[costs.length - 1] = new long[CHUNK_ROWS];
+			_costs = costs;
+		}
+		costs[row / CHUNK_ROWS][row % CHUNK_ROWS] = putString(record.getCostStr());
+		return this;
+	}
+
+	@Override
+	void copyCost(int row, String costStr) {
+		long[][] costs = _costs.clone();
+		int chunk = row / CHUNK_ROWS;
+		costs[chunk] = costs[chunk].clone();
+		costs[chunk][row % CHUNK_ROWS] = putString(costStr);
+		_costs = costs;
+	}
+
+	@Override
+	int type(int row) {
+		return chunk(row).get(offset(row) + TYPE);
+	}
+
+	@Override
+	int creator(int row) {
+		return chunk(row).getInt(offset(row) + CREATOR);
+	}
+
+	@Override
+	String title(int row) {
+		return string(chunk(row).getLong(offset(row) + TITLE));
+	}
+
+	@Override
+	int day(int row) {
+		return chunk(row).getInt(offset(row) + DAY);
+	}
+
+	@Override
+	int format(int row) {
+		return chunk(row).getInt(offset(row) + FORMAT);
+	}
+
+	@Override
+	Item item(int row) {
+		ByteBuffer buffer = chunk(row);
+		int at = offset(row);
+		String creator = strings().string(buffer.getInt(at + CREATOR));
+		String title = string(buffer.getLong(at + TITLE));
+		String release = string(buffer.getLong(at + RELEASE));
+		int acquisitionDay = buffer.getInt(at + DAY);
+		String owner = strings().string(owner(row));
+		String costStr = string(_costs[row / CHUNK_ROWS][row % CHUNK_ROWS]);
+		long costCents = cents(row);
+		String formatStr = strings().string(buffer.getInt(at + FORMAT));
+		if (buffer.get(at + TYPE) == ItemType.BOOK.ordinal()) {
+			return new Book(creator, title, release, acquisitionDay, owner, costStr, costCents, formatStr,
+					strings().string(buffer.getInt(at + PUBLISHER)));
+		}
+		return new Music(creator, title, release, acquisitionDay, owner, costStr, costCents, formatStr);
+	}
+
+	/**
+	 * @return The chunk of records holding the row.
+	 */
+	private ByteBuffer chunk(int row) {
+		return _chunks._rows[row / ROWS_PER_CHUNK];
+	}
+
+	/**
+	 * @return The offset of the record of the row in its chunk.
+	 */
+	private static int offset(int row) {
+		return (row % ROWS_PER_CHUNK) * ROW_BYTES;
+	}
+
+	/**
+	 * Append a string to the chunks of strings, adding a chunk if it does not fit in the last one.
+	 * @param value The string.
+	 * @return The reference to the string, the chunk in the high half and the offset in the low half,
+	 * or NO_STRING for null.
+	 */
+	private long putString(String value) {
+		if (value == null) {
+			return NO_STRING;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer[] chunks = _chunks._strings;
+		if (chunks.length == 0 || _chunks._stringEnd + 4 + bytes.length > chunks[chunks.length - 1].capacity()) {
+			chunks = Arrays.copyOf(chunks, chunks.length + 1);
+			chunks[chunks.length - 1] = ByteBuffer.allocateDirect(Math.max(STRING_CHUNK_BYTES, 4 + bytes.length));
+			_chunks._strings = chunks;
+			_chunks._stringEnd = 0;
+		}
+		ByteBuffer buffer = chunks[chunks.length - 1].duplicate();
+		buffer.position(_chunks._stringEnd);
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+		long reference = ((long) (chunks.length - 1) << 32) | _chunks._stringEnd;
+		_chunks._stringEnd += 4 + bytes.length;
+		return reference;
+	}
+
+	/**
+	 * @param reference The reference to a string, or NO_STRING.
+	 * @return The string, or null for NO_STRING.
+	 */
+	private String string(long reference) {
+		if (reference == NO_STRING) {
+			return null;
+		}
+		ByteBuffer buffer = _chunks._strings[(int) (reference >>> 32)].duplicate();
+		buffer.position((int) reference);
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * This Chunks class holds the chunks of records and of strings, so the copies of the columns
+	 * made when an item changes share them, and a string appended through one copy can be read
+	 * through any of them.
+	 */
+	private static final class Chunks {
+		//The arrays of chunks are replaced when a chunk is added, so readers never see a half-copied array.
+		private volatile ByteBuffer[] _rows = new ByteBuffer[0];
+		private volatile ByteBuffer[] _strings = new ByteBuffer[0];
+		private int _stringEnd; //only used by the writer
+	}
+}
@@ -0,0 +1,225 @@
+package inventoryman;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This OwnerSegment class holds the items of one owner for the flat report, in the order of the report:
+ * books before music, each sorted by creator then title, each with its line of the report.
+ * A line is rendered only when its item is added or changed, so the report is the lines of
+ * the owners one after another.
+ * <p>
+ * A segment never changes: adding or removing an item makes a new segment, so the writer can publish
+ * the segments of every owner at once and a reader walking them never sees an item with two owners
+ * or with none. The items are kept in chunks of up to twice {@link #CHUNK_ITEMS}, and a new segment
+ * copies only the chunk the item is in and the array of chunks, so a change costs about the same
+ * however many items the owner has.
+ *
+ */
+final class OwnerSegment {
+	private static final Comparator<Item> SORTING = Item.sorting(State.OWNER);
+	private static final int CHUNK_ITEMS = 256;
+
+	/**
+	 * The segment of an owner without items.
+	 */
+	static final OwnerSegment EMPTY = new OwnerSegment(new Item[0][], new String[0][]);
+
+	private final Item[][] _items;
+	private final String[][] _lines;
+	private final int[] _starts; //the index of the first item of each chunk, then the number of items
+
+	private OwnerSegment(Item[][] items, String[][] lines) {
+		_items = items;
+		_lines = lines;
+		_starts = new int[items.length + 1];
+		for (int i = 0; i < items.length; i++) {
+			_starts[i + 1] = _starts[i] + items[i].length;
+		}
+	}
+
+	/**
+	 * Add an item of the owner, rendering its line of the report.
+	 * @param item The item.
+	 * @return The segment with the item.
+	 */
+	OwnerSegment with(Item item) {
+		if (_items.length == 0) {
+			return new OwnerSegment(new Item[][] { { item } }, new String[][] { { item.asReportLine() } });
+		}
+		int chunk = chunkOf(item);
+		int at = -Arrays.binarySearch(_items[chunk], item, SORTING) - 1;
+		return new OwnerSegment(replaced(_items, chunk, inserted(_items[chunk], at, item)),
+				replaced(_lines, chunk, inserted(_lines[chunk], at, item.asReportLine())));
+	}
+
+	/**
+	 * Add many items of the owner, merging them into the segment in one pass.
+	 * @param added The items, sorted in the order of the report.
+	 * @return The segment with the items.
+	 */
+	OwnerSegment withAll(List<Item> added) {
+		int size = _starts[_items.length] + added.size();
+		Item[][] items = new Item[(size + CHUNK_ITEMS - 1) / CHUNK_ITEMS][];
+		String[][] lines = new String[items.length][];
+		int chunk = 0;
+		int from = 0;
+		int next = 0;
+		for (int start = 0; start < size; start += CHUNK_ITEMS) {
+			Item[] chunkItems = new Item[Math.min(CHUNK_ITEMS, size - start)];
+			String[] chunkLines = new String[chunkItems.length];
+			for (int i = 0; i < chunkItems.length; i++) {
+				if (next == added.size() || (from < _starts[_items.length] && SORTING.compare(item(from), added.get(next)) < 0)) {
+					chunkItems[i] = item(from);
+					chunkLines[i] = line(from++);
+				} else {
+					chunkItems[i] = added.get(next++);
+					chunkLines[i] = chunkItems[i].asReportLine();
+				}
+			}
+			items[chunk] = chunkItems;
+			lines[chunk++] = chunkLines;
+		}
+		return new OwnerSegment(items, lines);
+	}
+
+	/**
+	 * Remove an item of the owner. The item must be found by the values the report is sorted by
+	 * when it was added.
+	 * @param item The item.
+	 * @return The segment without the item.
+	 */
+	OwnerSegment without(Item item) {
+		int chunk = chunkOf(item);
+		int at = Arrays.binarySearch(_items[chunk], item, SORTING);
+		return new OwnerSegment(replaced(_items, chunk, removed(_items[chunk], at)),
+				replaced(_lines, chunk, removed(_lines[chunk], at)));
+	}
+
+	/**
+	 * @return true if the owner has no items.
+	 */
+	boolean isEmpty() {
+		return _items.length == 0;
+	}
+
+	/**
+	 * @return The lines of the report for the items of the owner, books first.
+	 */
+	List<String> lines() {
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index) {
+				return line(index);
+			}
+
+			@Override
+			public int size() {
+				return _starts[_items.length];
+			}
+		};
+	}
+
+	/**
+	 * @return The items of the owner in the order of the report.
+	 */
+	List<Item> items() {
+		return new AbstractList<Item>() {
+			@Override
+			public Item get(int index) {
+				return item(index);
+			}
+
+			@Override
+			public int size() {
+				return _starts[_items.length];
+			}
+		};
+	}
+
+	/**
+	 * @return The item at an index of the segment.
+	 */
+	private Item item(int index) {
+		int chunk = chunkAt(index);
+		return _items[chunk][index - _starts[chunk]];
+	}
+
+	/**
+	 * @return The line of the item at an index of the segment.
+	 */
+	private String line(int index) {
+		int chunk = chunkAt(index);
+		return _lines[chunk][index - _starts[chunk]];
+	}
+
+	/**
+	 * @return The chunk holding the item at an index of the segment.
+	 */
+	private int chunkAt(int index) {
+		if (index < 0 || index >= _starts[_items.length]) {
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+		}
+		int found = Arrays.binarySearch(_starts, 0, _items.length, index);
+		return found >= 0 ? found : -found - 2;
+	}
+
+	/**
+	 * @return The chunk an item is in or goes into: the last whose first item comes before it, or the first chunk.
+	 */
+	private int chunkOf(Item item) {
+		int low = 0;
+		int high = _items.length - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (SORTING.compare(_items[middle][0], item) <= 0) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return A copy of a chunk with a value inserted at an index.
+	 */
+	private static <T> T[] inserted(T[] chunk, int at, T value) {
+		T[] result = Arrays.copyOf(chunk, chunk.length + 1);
+		System.arraycopy(chunk, at, result, at + 1, chunk.length - at);
+		result[at] = value;
+		return result;
+	}
+
+	/**
+	 * @return A copy of a chunk without the value at an index.
+	 */
+	private static <T> T[] removed(T[] chunk, int at) {
+		T[] result = Arrays.copyOf(chunk, chunk.length - 1);
+		System.arraycopy(chunk, at + 1, result, at, result.length - at);
+		return result;
+	}
+
+	/**
+	 * Replace a chunk with a changed copy of it, leaving it out if it is empty and splitting it
+	 * in halves if it is too large. The items and the lines are always split at the same place.
+	 * @param chunks The chunks.
+	 * @param index The index of the chunk.
+	 * @param chunk The changed copy of the chunk.
+	 * @return A copy of the chunks.
+	 */
+	private static <T> T[][] replaced(T[][] chunks, int index, T[] chunk) {
+		int pieces = chunk.length == 0 ? 0 : chunk.length > 2 * CHUNK_ITEMS ? 2 : 1;
+		T[][] result = Arrays.copyOf(chunks, chunks.length - 1 + pieces);
+		System.arraycopy(chunks, index + 1, result, index + pieces, chunks.length - index - 1);
+		if (pieces == 1) {
+			result[index] = chunk;
+		} else if (pieces == 2) {
+			result[index] = Arrays.copyOfRange(chunk, 0, chunk.length / 2);
+			result[index + 1] = Arrays.copyOfRange(chunk, chunk.length / 2, chunk.length);
+		}
+		return result;
+	}
+}
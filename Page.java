@@ -0,0 +1,63 @@
+package inventoryman;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This Page class holds one page of items listed with
+ * {@link InventoryMan#getAll(String, String, int)}: the strings of the items, and a cursor
+ * to pass to get the next page, or null if there were no more items.
+ * <p>
+ * A cursor holds the values the orders sort by of the last item of the page, so it stays
+ * valid however many items are added or removed meanwhile; the next page starts after that place in the order.
+ * A string which is not a cursor gives an empty page with an error.
+ *
+ */
+public final class Page {
+	private final List<String> _items;
+	private final String _nextCursor;
+	private final String _error;
+
+	/**
+	 * Create a page.
+	 * @param items The strings of the items.
+	 * @param nextCursor The cursor of the last item, or null if there are no more items.
+	 */
+	Page(List<String> items, String nextCursor) {
+		_items = items;
+		_nextCursor = nextCursor;
+		_error = null;
+	}
+
+	/**
+	 * Create an empty page for a request which went wrong.
+	 * @param error A string beginning with "ERROR" and the rest of the string providing some details.
+	 */
+	Page(String error) {
+		_items = Collections.<String>emptyList();
+		_nextCursor = null;
+		_error = error;
+	}
+
+	/**
+	 * @return The strings of the items of the page, in the format of
+	 * {@link InventoryMan#getItemToDisplay(String, String, String)}.
+	 */
+	public List<String> getItems() {
+		return _items;
+	}
+
+	/**
+	 * @return The cursor to get the page after this one, or null if there were no more items.
+	 */
+	public String getNextCursor() {
+		return _nextCursor;
+	}
+
+	/**
+	 * @return null, or a string beginning with "ERROR" if the page could not be listed.
+	 */
+	public String getError() {
+		return _error;
+	}
+}
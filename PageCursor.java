@@ -0,0 +1,103 @@
+package inventoryman;
+
+/**
+ * This PageCursor class is the place in an order where a page of
+ * {@link InventoryMan#getAll(String, String, int)} ended: the key of the last item of the page,
+ * its day of acquisition, and the number which breaks ties in the orders, the order it was added.
+ * <p>
+ * These are all the values the orders sort by, so the next page can start from them even if the
+ * item has been removed meanwhile.
+ *
+ */
+final class PageCursor {
+
+	private final ItemKey _key;
+	private final int _acquisitionDay;
+	private final int _sequence;
+
+	/**
+	 * Construct the cursor of the last item of a page.
+	 * @param key The key of the item.
+	 * @param acquisitionDay The epoch day the item was acquired.
+	 * @param sequence The number of the item in the order the items were added.
+	 */
+	PageCursor(ItemKey key, int acquisitionDay, int sequence) {
+		_key = key;
+		_acquisitionDay = acquisitionDay;
+		_sequence = sequence;
+	}
+
+	/**
+	 * Read a cursor of a page.
+	 * @param cursor The string of the cursor.
+	 * @return The cursor, or null if the string is not a cursor.
+	 * @see #toString()
+	 */
+	static PageCursor parse(String cursor) {
+		int[] numbers = new int[2];
+		int at = 0;
+		for (int i = 0; i < numbers.length; i++) {
+			int colon = cursor.indexOf(':', at);
+			if (colon < 0) {
+				return null;
+			}
+			try {
+				numbers[i] = Integer.parseInt(cursor.substring(at, colon));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			at = colon + 1;
+		}
+		String[] values = new String[3];
+		for (int i = 0; i < 2; i++) {
+			int colon = cursor.indexOf(':', at);
+			if (colon < 0) {
+				return null;
+			}
+			int length;
+			try {
+				length = Integer.parseInt(cursor.substring(at, colon));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			if (length < 0 || length > cursor.length() - colon - 1) {
+				return null;
+			}
+			values[i] = cursor.substring(colon + 1, colon + 1 + length);
+			at = colon + 1 + length;
+		}
+		values[2] = cursor.substring(at);
+		return new PageCursor(new ItemKey(values[0], values[1], values[2]), numbers[1], numbers[0]);
+	}
+
+	/**
+	 * @return The key of the last item of the page.
+	 */
+	ItemKey key() {
+		return _key;
+	}
+
+	/**
+	 * @return The epoch day the last item of the page was acquired.
+	 */
+	int acquisitionDay() {
+		return _acquisitionDay;
+	}
+
+	/**
+	 * @return The number of the last item of the page in the order the items were added.
+	 */
+	int sequence() {
+		return _sequence;
+	}
+
+	/**
+	 * @return The cursor as a string: the sequence ":" the day ":", the length of the creator ":" the creator,
+	 * the length of the title ":" the title, then the format. The lengths keep any character allowed in the values.
+	 */
+	@Override
+	public String toString() {
+		return _sequence + ":" + _acquisitionDay + ":" + _key.creator().length() + ":" + _key.creator()
+				+ _key.title().length() + ":" + _key.title() + _key.formatStr();
+	}
+}
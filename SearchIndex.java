@@ -0,0 +1,270 @@
+package inventoryman;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * This SearchIndex class is an inverted index over the words of the titles, creators and publishers
+ * of the items of an inventory. Words are split at anything which is not a letter or a digit and
+ * folded to lower case. For each word it keeps the ids of the items which have it in an {@link IntTree},
+ * and the words are sorted, so all words starting with a prefix are next to each other.
+ * <p>
+ * An item matches a query when every word of the query starts a word of the item. An item scores
+ * 2 for each word of the query it has whole and 1 for each it only has a word starting with, and the
+ * best items come first, the earliest added among equals.
+ * <p>
+ * A search walks the ids of all words starting with each word of the query together, in increasing order,
+ * keeping only the best ids up to the limit, and stops as soon as no id still to come can score better than
+ * the worst of them. Removing an item takes its id out of the trees of its words, each in the logarithm
+ * of the number of ids, so a search never looks at removed ids.
+ * <p>
+ * Only the writer adds and removes. Readers never lock. A search running while an item is removed
+ * may still return its id.
+ *
+ */
+final class SearchIndex {
+	private static final int EXACT = 2;
+	private static final int PREFIX = 1;
+
+	private final ConcurrentNavigableMap<String, IntTree> _words = new ConcurrentSkipListMap<String, IntTree>();
+
+	/**
+	 * Add the words of an item.
+	 * @param id The id of the item.
+	 * @param title The title of the item.
+	 * @param creator The creator of the item.
+	 * @param publisher The publisher of the item, or null.
+	 */
+	void add(int id, String title, String creator, String publisher) {
+		for (String word : words(title, creator, publisher)) {
+			IntTree ids = _words.get(word);
+			_words.put(word, (ids == null ? IntTree.EMPTY : ids).add(id, IntTree.Order.NATURAL));
+		}
+	}
+
+	/**
+	 * Add the words of an item.
+	 * @param id The id of the item.
+	 * @param item The item.
+	 */
+	void add(int id, Item item) {
+		add(id, item._title, item.creator(), item.type() == ItemType.BOOK ? ((Book) item).publisher() : null);
+	}
+
+	/**
+	 * Remove the words of an item, dropping a word when no item has it any more.
+	 * @param id The id of the item.
+	 * @param title The title of the item.
+	 * @param creator The creator of the item.
+	 * @param publisher The publisher of the item, or null.
+	 */
+	void remove(int id, String title, String creator, String publisher) {
+		for (String word : words(title, creator, publisher)) {
+			IntTree ids = _words.get(word);
+			if (ids == null) {
+				continue;
+			}
+			ids = ids.remove(id, IntTree.Order.NATURAL);
+			if (ids.size() == 0) {
+				_words.remove(word);
+			} else {
+				_words.put(word, ids);
+			}
+		}
+	}
+
+	/**
+	 * Remove the words of an item.
+	 * @param id The id of the item.
+	 * @param item The item.
+	 */
+	void remove(int id, Item item) {
+		remove(id, item._title, item.creator(), item.type() == ItemType.BOOK ? ((Book) item).publisher() : null);
+	}
+
+	/**
+	 * Find the items matching a query, the best first.
+	 * @param query The words to search for.
+	 * @param limit The most ids to return.
+	 * @return The ids of the best matching items, the best first.
+	 */
+	int[] search(String query, int limit) {
+		Set<String> words = new LinkedHashSet<String>(words(query));
+		if (words.isEmpty() || limit <= 0) {
+			return new int[0];
+		}
+		List<Matches> matches = new ArrayList<Matches>();
+		for (String word : words) {
+			matches.add(new Matches(word));
+		}
+
+		//The worst of the kept ids at the head, so it is the one dropped. A rank holds the score
+		//above the id counted down, so a higher rank is a higher score or a lower id among equals.
+		PriorityQueue<Long> kept = new PriorityQueue<Long>();
+		int id = 0;
+		while (true) {
+			//Take the next id matching every word, each word skipping to the highest id seen so far.
+			boolean found = false;
+			while (!found) {
+				found = true;
+				for (Matches match : matches) {
+					match.skipTo(id);
+					if (!match.hasNext()) {
+						return best(kept);
+					}
+					if (match.peek() > id) {
+						id = match.peek();
+						found = false;
+					}
+				}
+			}
+			int score = 0;
+			int bestToCome = 0;
+			for (Matches match : matches) {
+				score += match.isExact(id) ? EXACT : PREFIX;
+				bestToCome += match.hasExactAfter(id) ? EXACT : PREFIX;
+			}
+			kept.add(((long) score << 32) | (Integer.MAX_VALUE - id));
+			if (kept.size() > limit) {
+				kept.poll();
+			}
+			//Ids still to come are higher, so they lose a tie with any kept id.
+			if (kept.size() == limit && (int) (kept.peek() >>> 32) >= bestToCome) {
+				return best(kept);
+			}
+			id++;
+		}
+	}
+
+	/**
+	 * Split a text into words folded to lower case.
+	 * @param text The text, or null.
+	 * @return The words, in the order of the text.
+	 */
+	static List<String> words(String text) {
+		List<String> words = new ArrayList<String>();
+		if (text == null) {
+			return words;
+		}
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (inWord && start < 0) {
+				start = i;
+			} else if (!inWord && start >= 0) {
+				words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * @return The words of the title, creator and publisher of an item, each once.
+	 */
+	private static Set<String> words(String title, String creator, String publisher) {
+		Set<String> words = new LinkedHashSet<String>();
+		words.addAll(words(title));
+		words.addAll(words(creator));
+		words.addAll(words(publisher));
+		return words;
+	}
+
+	/**
+	 * @param kept The ranks of the kept ids, the worst at the head.
+	 * @return The ids, the best first.
+	 */
+	private static int[] best(PriorityQueue<Long> kept) {
+		int[] result = new int[kept.size()];
+		for (int i = result.length - 1; i >= 0; i--) {
+			result[i] = Integer.MAX_VALUE - (int) kept.poll().longValue();
+		}
+		return result;
+	}
+
+	/**
+	 * This Matches class walks the ids of the items with a word starting with a word of a query,
+	 * in increasing order and each once, by keeping a walk over the ids of each such word in a heap
+	 * with the walk of the lowest next id at the head.
+	 */
+	private final class Matches {
+		private final PriorityQueue<IntTree.Walk> _walks = new PriorityQueue<IntTree.Walk>(11,
+				new Comparator<IntTree.Walk>() {
+					@Override
+					public int compare(IntTree.Walk walk1, IntTree.Walk walk2) {
+						return Integer.compare(walk1.peek(), walk2.peek());
+					}
+				});
+		private final IntTree.Walk _exact;
+
+		/**
+		 * @param prefix The word of the query.
+		 */
+		Matches(String prefix) {
+			IntTree exact = _words.get(prefix);
+			_exact = (exact == null ? IntTree.EMPTY : exact).walk(0);
+			for (Map.Entry<String, IntTree> entry : _words.tailMap(prefix, true).entrySet()) {
+				if (!entry.getKey().startsWith(prefix)) {
+					break;
+				}
+				IntTree.Walk walk = entry.getValue().walk(0);
+				if (walk.hasNext()) {
+					_walks.add(walk);
+				}
+			}
+		}
+
+		/**
+		 * @return true if there are more ids.
+		 */
+		boolean hasNext() {
+			return !_walks.isEmpty();
+		}
+
+		/**
+		 * @return The next id.
+		 */
+		int peek() {
+			return _walks.peek().peek();
+		}
+
+		/**
+		 * Go past all ids lower than an id.
+		 */
+		void skipTo(int id) {
+			while (!_walks.isEmpty() && _walks.peek().peek() < id) {
+				IntTree.Walk walk = _walks.poll();
+				walk.skipTo(id, IntTree.Order.NATURAL);
+				if (walk.hasNext()) {
+					_walks.add(walk);
+				}
+			}
+		}
+
+		/**
+		 * @param id An id, not lower than any asked before.
+		 * @return true if the item has the word of the query whole.
+		 */
+		boolean isExact(int id) {
+			_exact.skipTo(id, IntTree.Order.NATURAL);
+			return _exact.hasNext() && _exact.peek() == id;
+		}
+
+		/**
+		 * @param id An id, not lower than any asked before.
+		 * @return true if an item with a higher id has the word of the query whole.
+		 */
+		boolean hasExactAfter(int id) {
+			_exact.skipTo(id + 1, IntTree.Order.NATURAL);
+			return _exact.hasNext();
+		}
+	}
+}
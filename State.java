@@ -2,10 +2,26 @@ package inventoryman;
 
 /**
  * An enum State provides constants for different types of comparisons,
- * including creator, title and acquisition date.
+ * including creator, title, acquisition date and owner (the order of the flat report).
  * @author chenh
  *
  */
 public enum State {
-	CREATOR, TITLE, ACQUISITION;
+	CREATOR, TITLE, ACQUISITION, OWNER;
+	
+	/**
+	 * Find the state for an order of {@link InventoryMan#getAll(String)}.
+	 * @param order The order, either "Creator", "Title" or "Acquisition".
+	 * @return The state of the order, or null if it is not one of the orders.
+	 */
+	public static State fromOrder(String order) {
+		if ("Creator".equals(order)) {
+			return CREATOR;
+		}else if ("Title".equals(order)) {
+			return TITLE;
+		}else if ("Acquisition".equals(order)) {
+			return ACQUISITION;
+		}
+		return null;
+	}
 }
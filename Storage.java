@@ -0,0 +1,31 @@
+package inventoryman;
+
+/**
+ * An enum Storage provides constants for the ways an inventory can keep its items in memory,
+ * so the storage can be picked when the inventory is created.
+ * OBJECTS keeps an object for each item in ordered indexes, see {@link InventoryManImpl}.
+ * COLUMNS keeps the values of all items in columns of numbers, see {@link ColumnarInventoryMan},
+ * which takes less heap, while scans and changes take about as long as with objects.
+ * OFF_HEAP keeps the columns outside the heap, see {@link OffHeapColumns}, so the garbage
+ * collector does not slow down as the inventory grows.
+ *
+ */
+public enum Storage {
+	OBJECTS, COLUMNS, OFF_HEAP;
+
+	/**
+	 * Create an empty inventory which keeps its items in this storage.
+	 * @param flatName The name of the flat whose inventory items are being managed.
+	 * @return The inventory.
+	 */
+	public InventoryMan create(String flatName) {
+		switch (this) {
+		case COLUMNS:
+			return new ColumnarInventoryMan(flatName);
+		case OFF_HEAP:
+			return new ColumnarInventoryMan(flatName, true);
+		default:
+			return new InventoryManImpl(flatName);
+		}
+	}
+}
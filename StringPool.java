@@ -0,0 +1,115 @@
+package inventoryman;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This StringPool class maps strings which repeat across many items, such as creators, owners,
+ * publishers and formats, to small int ids. Each distinct string is kept once however many items
+ * use it, and two ids are equal exactly when their strings are equal.
+ * Ids are never removed, since a reader may still hold the id of a removed item, so each inventory
+ * has its own pool, which goes away with it, and the pool should only hold values which repeat.
+ * Looking up the string of an id never locks.
+ *
+ */
+final class StringPool {
+	
+	/**
+	 * The id of null.
+	 */
+	static final int NULL_ID = -1;
+	
+	/**
+	 * The id found for a string which is not in the pool.
+	 */
+	static final int NO_ID = -2;
+	
+	private final Map<String, Integer> _ids = new ConcurrentHashMap<String, Integer>();
+	private volatile String[] _strings = new String[64];
+	private int _size; //guarded by this
+	
+	/**
+	 * Find the id of a string, adding the string to the pool if it is new.
+	 * @param string The string.
+	 * @return The id of the string, or NULL_ID for null.
+	 */
+	int id(String string) {
+		if (string == null) {
+			return NULL_ID;
+		}
+		Integer id = _ids.get(string);
+		if (id != null) {
+			return id;
+		}
+		synchronized (this) {
+			id = _ids.get(string);
+			if (id != null) {
+				return id;
+			}
+			if (_size == _strings.length) {
+				_strings = Arrays.copyOf(_strings, _size * 2);
+			}
+			_strings[_size] = string;
+			id = _size++;
+			
+			//Published after the string is in the array, so any thread with the id can read it.
+			_ids.put(string, id);
+			return id;
+		}
+	}
+	
+	/**
+	 * Find the id of a string without adding it to the pool.
+	 * @param string The string.
+	 * @return The id of the string, NULL_ID for null, or NO_ID if the string is not in the pool.
+	 */
+	int find(String string) {
+		if (string == null) {
+			return NULL_ID;
+		}
+		Integer id = _ids.get(string);
+		return id == null ? NO_ID : id;
+	}
+	
+	/**
+	 * @param string A string, or null.
+	 * @return The string kept in the pool equal to it, adding it if it is new.
+	 */
+	String shared(String string) {
+		return string(id(string));
+	}
+	
+	/**
+	 * Compare two strings of the pool in alphabetical order. Equal strings have equal ids,
+	 * so they are found equal without looking at the strings.
+	 * @param id1 The id of a string in the pool.
+	 * @param id2 The id of a string in the pool.
+	 * @return Less than 0, 0 or more than 0 as the first string comes before, with or after the second.
+	 */
+	int compare(int id1, int id2) {
+		if (id1 == id2) {
+			return 0;
+		}
+		String[] strings = _strings;
+		return strings[id1].compareTo(strings[id2]);
+	}
+	
+	/**
+	 * @param id The id of a string in the pool, or NULL_ID.
+	 * @return The string, or null for NULL_ID.
+	 */
+	String string(int id) {
+		if (id == NULL_ID) {
+			return null;
+		}
+		return _strings[id];
+	}
+	
+	/**
+	 * @return The number of strings in the pool.
+	 */
+	synchronized int size() {
+		return _size;
+	}
+}
@@ -0,0 +1,24 @@
+package inventoryman;
+
+/**
+ * An enum ValidationResult provides the result of checking the values of an item
+ * before it is created, either valid or the reason the item is rejected.
+ *
+ */
+public enum ValidationResult {
+	VALID(""), BAD_DATE("Date is wrong!"), BAD_COST("Cost is wrong!"), BAD_OWNER("Owner is wrong!"),
+	BAD_KEY("Creator, title and format are needed!");
+	
+	private final String _message;
+	
+	private ValidationResult(String message) {
+		_message = message;
+	}
+	
+	/**
+	 * @return The details of what is wrong, used after "ERROR" in the result of adding an item.
+	 */
+	public String message() {
+		return _message;
+	}
+}
@@ -0,0 +1,577 @@
+package inventoryman;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * This WriteAheadLog class appends every item added to an inventory to a binary file, so the
+ * inventory can be rebuilt by replaying the file after a restart. The file starts with a header,
+ * followed by one entry per item: the length of the entry, the entry and its CRC32. An entry is
+ * the type of the item and its values as given to the inventory, each string as its length
+ * and UTF-8 bytes. Items removed, given to another owner or repriced are entries too: the kind of
+ * change, the creator, title and format of the item, and the new value if there is one.
+ * A torn or damaged entry at the end of the file, left by a crash, is cut off when
+ * the log is opened. Replaying an item the inventory already has, from a snapshot written just
+ * before a crash, changes nothing; any other entry the inventory rejects is counted, see
+ * {@link #failedReplays()}.
+ * When items are forced to disk depends on the {@link FsyncPolicy}.
+ * <p>
+ * The file is written and forced through a {@link RandomAccessFile} rather than a FileChannel, whose
+ * blocking operations close it for every thread when the thread calling them is interrupted.
+ * A writer interrupted while waiting for its entry to be forced goes on waiting and keeps the interrupt.
+ * Once the file could not be written or forced, it is unknown which entries are in it, so every
+ * later entry and commit fails until the log is opened again.
+ *
+ * @see InventoryManImpl#open(String, Path, FsyncPolicy)
+ */
+public class WriteAheadLog implements Closeable {
+	
+	/**
+	 * How often items are forced to disk with {@link FsyncPolicy#PERIODIC}.
+	 */
+	public static final long PERIOD_MILLIS = 100;
+	
+	private static final int MAGIC = 0x494d574c; //"IMWL"
+	private static final int VERSION = 2; //version 1 had no changes, so is read the same
+	private static final int HEADER_BYTES = 8;
+	private static final byte BOOK = 0;
+	private static final byte MUSIC = 1;
+	private static final byte REMOVE = 2;
+	private static final byte TRANSFER = 3;
+	private static final byte COST = 4;
+	
+	//Items are replayed into the inventory in batches of this many items.
+	private static final int BATCH_SIZE = 8192;
+	
+	private final RandomAccessFile _file;
+	private final FsyncPolicy _policy;
+	private final ByteArrayOutputStream _entry = new ByteArrayOutputStream();
+	private final DataOutputStream _entryOut = new DataOutputStream(_entry);
+	private final CRC32 _crc = new CRC32();
+	private final Thread _forcer;
+	
+	//Entries appended but not yet written to the file, and the tickets of the last entry appended,
+	//written and forced. All are guarded by this.
+	private ByteBuffer _pending = ByteBuffer.allocate(64 * 1024);
+	private long _appended;
+	private long _written;
+	private long _forced;
+	private boolean _forcing;
+	private boolean _closed;
+	private IOException _failure;
+	private int _failedReplays;
+	
+	private WriteAheadLog(RandomAccessFile file, FsyncPolicy policy) {
+		_file = file;
+		_policy = policy;
+		if (policy == FsyncPolicy.PERIODIC) {
+			_forcer = new Thread("WriteAheadLog forcer") {
+				@Override
+				public void run() {
+					forcePeriodically();
+				}
+			};
+			_forcer.setDaemon(true);
+			_forcer.start();
+		}else {
+			_forcer = null;
+		}
+	}
+	
+	/**
+	 * Open a log, creating the file if it does not exist, and replay the items in it into the inventory.
+	 * @param file The file of the log.
+	 * @param policy When to force items to disk.
+	 * @param inventoryMan The inventory to add the items of the log to.
+	 * @return The log, ready to append to.
+	 * @throws IOException If the file can not be read or written, or is not a log.
+	 */
+	static WriteAheadLog open(Path file, FsyncPolicy policy, InventoryMan inventoryMan) throws IOException {
+		RandomAccessFile out = new RandomAccessFile(file.toFile(), "rw");
+		try {
+			long end;
+			int[] failed = new int[1];
+			if (out.length() < HEADER_BYTES) {
+				out.setLength(0);
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.getFD().sync();
+				end = HEADER_BYTES;
+			}else {
+				end = replay(file, inventoryMan, failed);
+				out.setLength(end);
+				out.seek(4);
+				out.writeInt(VERSION);
+			}
+			out.seek(end);
+			WriteAheadLog log = new WriteAheadLog(out, policy);
+			log._failedReplays = failed[0];
+			return log;
+		} catch (IOException | RuntimeException e) {
+			out.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Add the items of a log to the inventory.
+	 * @param failed Where to count the entries the inventory rejected.
+	 * @return The position after the last whole entry.
+	 */
+	private static long replay(Path file, InventoryMan inventoryMan, int[] failed) throws IOException {
+		List<ItemRecord> batch = new ArrayList<ItemRecord>(BATCH_SIZE);
+		long size = Files.size(file);
+		long end = HEADER_BYTES;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			int magic = in.readInt();
+			int version = in.readInt();
+			if (magic != MAGIC || version < 1 || version > VERSION) {
+				throw new IOException(file + " is not a write-ahead log of an inventory");
+			}
+			CRC32 crc = new CRC32();
+			while (true) {
+				byte[] entry;
+				try {
+					int length = in.readInt();
+					if (length <= 0 || end + 4 + length + 4 > size) {
+						break;
+					}
+					entry = new byte[length];
+					in.readFully(entry);
+					crc.reset();
+					crc.update(entry, 0, length);
+					if (in.readInt() != (int) crc.getValue()) {
+						break;
+					}
+				} catch (EOFException e) {
+					break;
+				}
+				end += 4 + entry.length + 4;
+				if (entry[0] != BOOK && entry[0] != MUSIC) {
+					//A change applies to the items added before it, so they are added first.
+					if (!batch.isEmpty()) {
+						failed[0] += failures(inventoryMan.addAll(batch));
+						batch.clear();
+					}
+					if (!applyChange(entry, inventoryMan).equals("Success")) {
+						failed[0]++;
+					}
+					continue;
+				}
+				batch.add(readEntry(entry));
+				if (batch.size() == BATCH_SIZE) {
+					failed[0] += failures(inventoryMan.addAll(batch));
+					batch.clear();
+				}
+			}
+		}
+		if (!batch.isEmpty()) {
+			failed[0] += failures(inventoryMan.addAll(batch));
+		}
+		return end;
+	}
+	
+	/**
+	 * @param results The results of replaying items.
+	 * @return The number of items not added, other than those the inventory already had.
+	 */
+	private static int failures(List<String> results) {
+		int failures = 0;
+		for (String result : results) {
+			if (!result.equals("Success") && !result.equals("ERROR" + "Item already exists!")) {
+				failures++;
+			}
+		}
+		return failures;
+	}
+	
+	/**
+	 * Add the entry of an item to the log. The entry is only in the file once it has been committed.
+	 * @param record The values of the item.
+	 * @return The ticket of the entry, to commit it.
+	 * @throws IOException If the log can not be written.
+	 * @see #commit(long)
+	 */
+	synchronized long append(ItemRecord record) throws IOException {
+		checkWritable();
+		_entry.reset();
+		writeEntry(record);
+		return appendEntry();
+	}
+	
+	/**
+	 * Add the entry of the removal of an item to the log.
+	 * @param key The creator, title and format of the item.
+	 * @return The ticket of the entry, to commit it.
+	 * @throws IOException If the log can not be written.
+	 */
+	long appendRemove(ItemKey key) throws IOException {
+		return appendChange(REMOVE, key, null);
+	}
+	
+	/**
+	 * Add the entry of giving an item to another owner to the log.
+	 * @param key The creator, title and format of the item.
+	 * @param newOwner The new owner.
+	 * @return The ticket of the entry, to commit it.
+	 * @throws IOException If the log can not be written.
+	 */
+	long appendTransfer(ItemKey key, String newOwner) throws IOException {
+		return appendChange(TRANSFER, key, newOwner);
+	}
+	
+	/**
+	 * Add the entry of a new cost of an item to the log.
+	 * @param key The creator, title and format of the item.
+	 * @param costStr The new cost, as given to the inventory.
+	 * @return The ticket of the entry, to commit it.
+	 * @throws IOException If the log can not be written.
+	 */
+	long appendCost(ItemKey key, String costStr) throws IOException {
+		return appendChange(COST, key, costStr);
+	}
+	
+	/**
+	 * Add the entry of a change to an item to the log.
+	 */
+	private synchronized long appendChange(byte kind, ItemKey key, String value) throws IOException {
+		checkWritable();
+		_entry.reset();
+		_entryOut.writeByte(kind);
+		writeString(_entryOut, key.creator());
+		writeString(_entryOut, key.title());
+		writeString(_entryOut, key.formatStr());
+		writeString(_entryOut, value);
+		_entryOut.flush();
+		return appendEntry();
+	}
+	
+	/**
+	 * Frame the entry in _entry with its length and CRC32 and add it to the pending entries. Must hold the lock.
+	 * @return The ticket of the entry.
+	 */
+	private long appendEntry() throws IOException {
+		byte[] entry = _entry.toByteArray();
+		_crc.reset();
+		_crc.update(entry, 0, entry.length);
+		ensurePending(4 + entry.length + 4);
+		_pending.putInt(entry.length).put(entry).putInt((int) _crc.getValue());
+		_appended++;
+		if (_policy == FsyncPolicy.ALWAYS) {
+			commit(_appended);
+		}
+		return _appended;
+	}
+	
+	/**
+	 * Wait until the entry, and every entry before it, is as safe as the policy requires:
+	 * forced to disk for ALWAYS and GROUP, written to the file for PERIODIC and NEVER.
+	 * Entries of other threads waiting at the same time are written and forced together.
+	 * @param ticket The ticket of the entry.
+	 * @throws IOException If the log can not be written.
+	 */
+	void commit(long ticket) throws IOException {
+		boolean interrupted = false;
+		try {
+			long target;
+			synchronized (this) {
+				if (_written < ticket) {
+					if (_failure != null) {
+						throw failed();
+					}
+					writePending();
+				}
+				if (_policy == FsyncPolicy.PERIODIC || _policy == FsyncPolicy.NEVER) {
+					return;
+				}
+				
+				//Wait for a force already running, it may cover this entry too.
+				while (_forcing && _forced < ticket) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				if (_forced >= ticket) {
+					return;
+				}
+				if (_failure != null) {
+					throw failed();
+				}
+				_forcing = true;
+				target = _written;
+			}
+			
+			//Force without the lock, so other threads can append and join the next force.
+			IOException failure = null;
+			try {
+				_file.getFD().sync();
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			} finally {
+				synchronized (this) {
+					_forcing = false;
+					if (failure == null) {
+						_forced = Math.max(_forced, target);
+					} else {
+						_failure = failure;
+					}
+					notifyAll();
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * @return The number of entries the inventory rejected when the log was replayed, 0 unless the
+	 * inventory it was replayed into did not hold what the log was written against.
+	 */
+	int failedReplays() {
+		return _failedReplays;
+	}
+	
+	/**
+	 * @return The ticket of the last entry as safe as the policy requires, which can no longer be lost.
+	 */
+	synchronized long committed() {
+		return _policy == FsyncPolicy.PERIODIC || _policy == FsyncPolicy.NEVER ? _written : _forced;
+	}
+	
+	/**
+	 * Empty the log, once every entry in it is in a snapshot which is on disk. Every entry appended
+	 * must have been committed, and no entry may be appended until this returns.
+	 * @throws IOException If the log can not be written.
+	 */
+	synchronized void truncate() throws IOException {
+		checkWritable();
+		try {
+			writePending();
+			_file.setLength(HEADER_BYTES);
+			_file.seek(HEADER_BYTES);
+			_file.getFD().sync();
+		} catch (IOException e) {
+			_failure = e;
+			throw e;
+		}
+		_forced = _written;
+	}
+	
+	/**
+	 * Write and force every entry to disk, then close the file.
+	 * @throws IOException If the log can not be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException failure;
+		synchronized (this) {
+			if (_closed) {
+				return;
+			}
+			_closed = true;
+			failure = _failure == null ? null : failed();
+			if (failure == null) {
+				writePending();
+				_file.getFD().sync();
+				_forced = _written;
+			}
+			notifyAll();
+		}
+		if (_forcer != null) {
+			_forcer.interrupt();
+		}
+		_file.close();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+	
+	/**
+	 * Check that entries can still be appended. Must hold the lock of this.
+	 * @throws IOException If the log is closed or could not be written.
+	 */
+	private void checkWritable() throws IOException {
+		if (_closed) {
+			throw new IOException("The write-ahead log is closed");
+		}
+		if (_failure != null) {
+			throw failed();
+		}
+	}
+	
+	/**
+	 * @return The exception for an entry which can not be made safe since the file could not be written. Must hold the lock of this.
+	 */
+	private IOException failed() {
+		return new IOException("The write-ahead log could not be written", _failure);
+	}
+	
+	/**
+	 * Write the entries appended since the last write to the file. Must hold the lock of this.
+	 * A failed write fails the log, since part of the entries may be in the file.
+	 */
+	private void writePending() throws IOException {
+		try {
+			_file.write(_pending.array(), _pending.arrayOffset(), _pending.position());
+		} catch (IOException e) {
+			_failure = e;
+			throw e;
+		}
+		_pending.clear();
+		_written = _appended;
+	}
+	
+	/**
+	 * Make room for an entry in the buffer of entries not yet written. Must hold the lock of this.
+	 */
+	private void ensurePending(int bytes) {
+		if (_pending.remaining() >= bytes) {
+			return;
+		}
+		ByteBuffer larger = ByteBuffer.allocate(Math.max(_pending.capacity() * 2, _pending.position() + bytes));
+		_pending.flip();
+		larger.put(_pending);
+		_pending = larger;
+	}
+	
+	/**
+	 * Force the written entries to disk every period until the log is closed.
+	 */
+	private void forcePeriodically() {
+		try {
+			while (true) {
+				long target;
+				synchronized (this) {
+					wait(PERIOD_MILLIS);
+					if (_closed) {
+						return;
+					}
+					if (_forced >= _written) {
+						continue;
+					}
+					target = _written;
+				}
+				try {
+					_file.getFD().sync();
+				} catch (IOException e) {
+					synchronized (this) {
+						_failure = e;
+					}
+					return;
+				}
+				synchronized (this) {
+					_forced = Math.max(_forced, target);
+				}
+			}
+		} catch (InterruptedException e) {
+			//The log is closed.
+		}
+	}
+	
+	/**
+	 * Write the entry of an item to _entryOut.
+	 */
+	private void writeEntry(ItemRecord record) throws IOException {
+		boolean book = record.getType() == ItemType.BOOK;
+		_entryOut.writeByte(book ? BOOK : MUSIC);
+		writeString(_entryOut, record.getCreator());
+		writeString(_entryOut, record.getTitle());
+		writeString(_entryOut, record.getPublicationYear());
+		writeString(_entryOut, record.getAcquisitionDateStr());
+		writeString(_entryOut, record.getOwner());
+		writeString(_entryOut, record.getCostStr());
+		writeString(_entryOut, record.getFormatStr());
+		if (book) {
+			writeString(_entryOut, record.getPublisher());
+		}
+		_entryOut.flush();
+	}
+	
+	/**
+	 * Read the values of an item from its entry.
+	 */
+	private static ItemRecord readEntry(byte[] entry) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+		byte type = in.readByte();
+		String creator = readString(in);
+		String title = readString(in);
+		String publicationYear = readString(in);
+		String acquisitionDateStr = readString(in);
+		String owner = readString(in);
+		String costStr = readString(in);
+		String formatStr = readString(in);
+		if (type == BOOK) {
+			return ItemRecord.book(creator, title, publicationYear, readString(in), acquisitionDateStr, owner,
+					costStr, formatStr);
+		}
+		return ItemRecord.music(creator, title, publicationYear, acquisitionDateStr, owner, costStr, formatStr);
+	}
+	
+	/**
+	 * Apply the change of an entry to the inventory.
+	 * @return "Success", or the error of the inventory if it rejected the change.
+	 */
+	private static String applyChange(byte[] entry, InventoryMan inventoryMan) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+		byte kind = in.readByte();
+		String creator = readString(in);
+		String title = readString(in);
+		String formatStr = readString(in);
+		String value = readString(in);
+		switch (kind) {
+		case REMOVE:
+			return inventoryMan.removeItem(creator, title, formatStr);
+		case TRANSFER:
+			return inventoryMan.transferOwner(creator, title, formatStr, value);
+		case COST:
+			return inventoryMan.updateCost(creator, title, formatStr, value);
+		default:
+			throw new IOException("Unknown entry in the write-ahead log: " + kind);
+		}
+	}
+	
+	/**
+	 * Write a string as its length in bytes (-1 for null) and its UTF-8 bytes.
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Read a string written by {@link #writeString(DataOutputStream, String)}.
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}